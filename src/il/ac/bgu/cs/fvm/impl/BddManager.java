@@ -0,0 +1,437 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A small reduced ordered BDD package. Nodes are ints indexing into parallel arrays;
+ * {@link #FALSE} and {@link #TRUE} are the terminals and variable {@code i} is ordered
+ * before variable {@code i + 1}.
+ * <p>
+ * Nodes are hash-consed through a unique table, and {@code ite} and the quantifiers are
+ * memoized in a direct-mapped operation cache. Garbage is collected between top-level
+ * operations: nodes the caller wants to keep must be protected with {@link #ref(int)}
+ * (and released with {@link #deref(int)}); the operands of the operation being started
+ * are kept as well.
+ */
+public class BddManager {
+
+    public static final int FALSE = 0;
+    public static final int TRUE = 1;
+
+    private static final int OP_ITE = 0, OP_EXISTS = 1, OP_AND_EXISTS = 2;
+    private static final int FREE = -1;
+
+    private final int varCount;
+
+    // node table; a free node has var FREE and links the free list through low
+    private int[] var, low, high, next, refs;
+    private int[] buckets;
+    private int freeList = -1;
+    private int used;
+    private int gcThreshold;
+
+    private int[] cacheOp, cacheA, cacheB, cacheC, cacheRes;
+
+    public BddManager(int varCount) {
+        this(varCount, 1 << 16);
+    }
+
+    public BddManager(int varCount, int initialNodes) {
+        this.varCount = varCount;
+        int size = Math.max(Integer.highestOneBit(Math.max(initialNodes, 16) - 1) << 1, 16);
+        allocate(size);
+        // terminals sit below every variable
+        var[FALSE] = var[TRUE] = varCount;
+        low[FALSE] = high[FALSE] = FALSE;
+        low[TRUE] = high[TRUE] = TRUE;
+        used = 2;
+        for(int n = size - 1; n >= 2; n--) free(n);
+        gcThreshold = size / 2;
+        resizeCache(size);
+    }
+
+    public int varCount() {
+        return varCount;
+    }
+
+    /**
+     * Live nodes, terminals included.
+     */
+    public int nodeCount() {
+        return used;
+    }
+
+    public int var(int i) {
+        checkVar(i);
+        return mk(i, FALSE, TRUE);
+    }
+
+    public int nvar(int i) {
+        checkVar(i);
+        return mk(i, TRUE, FALSE);
+    }
+
+    public int variableOf(int f) {
+        return var[f];
+    }
+
+    public int low(int f) {
+        return low[f];
+    }
+
+    public int high(int f) {
+        return high[f];
+    }
+
+    // --- reference counting and garbage collection
+
+    public int ref(int f) {
+        if(f > TRUE) refs[f]++;
+        return f;
+    }
+
+    public void deref(int f) {
+        if(f <= TRUE) return;
+        if(refs[f] <= 0) throw new IllegalStateException("Node " + f + " is not referenced");
+        refs[f]--;
+    }
+
+    /**
+     * Frees every node not reachable from a referenced node or from {@code roots}.
+     */
+    public void gc(int... roots) {
+        boolean[] marked = new boolean[var.length];
+        marked[FALSE] = marked[TRUE] = true;
+        for(int n = 2; n < var.length; n++)
+            if(var[n] != FREE && refs[n] > 0) mark(n, marked);
+        for(int r: roots) mark(r, marked);
+
+        Arrays.fill(buckets, -1);
+        freeList = -1;
+        used = 2;
+        for(int n = var.length - 1; n >= 2; n--){
+            if(marked[n]){
+                used++;
+                link(n);
+            }
+            else free(n);
+        }
+        Arrays.fill(cacheOp, -1);
+        gcThreshold = Math.max(gcThreshold, used * 2);
+    }
+
+    private void mark(int root, boolean[] marked) {
+        int[] stack = new int[64];
+        int sp = 0;
+        stack[sp++] = root;
+        while(sp > 0){
+            int n = stack[--sp];
+            if(marked[n]) continue;
+            marked[n] = true;
+            if(sp + 2 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+            stack[sp++] = low[n];
+            stack[sp++] = high[n];
+        }
+    }
+
+    private void maybeGc(int... operands) {
+        if(used > gcThreshold) gc(operands);
+    }
+
+    // --- operations
+
+    public int not(int f) {
+        maybeGc(f);
+        return iteRec(f, FALSE, TRUE);
+    }
+
+    public int and(int f, int g) {
+        maybeGc(f, g);
+        return iteRec(f, g, FALSE);
+    }
+
+    public int or(int f, int g) {
+        maybeGc(f, g);
+        return iteRec(f, TRUE, g);
+    }
+
+    public int xor(int f, int g) {
+        maybeGc(f, g);
+        return iteRec(f, iteRec(g, FALSE, TRUE), g);
+    }
+
+    public int iff(int f, int g) {
+        maybeGc(f, g);
+        return iteRec(f, g, iteRec(g, FALSE, TRUE));
+    }
+
+    public int implies(int f, int g) {
+        maybeGc(f, g);
+        return iteRec(f, g, TRUE);
+    }
+
+    public int ite(int f, int g, int h) {
+        maybeGc(f, g, h);
+        return iteRec(f, g, h);
+    }
+
+    /**
+     * The conjunction of the given variables, for use as a quantification cube.
+     */
+    public int cube(int... vars) {
+        int[] sorted = vars.clone();
+        Arrays.sort(sorted);
+        int res = TRUE;
+        for(int i = sorted.length - 1; i >= 0; i--){
+            checkVar(sorted[i]);
+            if(i == sorted.length - 1 || sorted[i] != sorted[i + 1])
+                res = mk(sorted[i], FALSE, res);
+        }
+        return res;
+    }
+
+    /**
+     * Existential quantification of the variables of {@code cube} in {@code f}.
+     */
+    public int exists(int f, int cube) {
+        maybeGc(f, cube);
+        return existsRec(f, cube);
+    }
+
+    /**
+     * {@code exists(and(f, g), cube)}, without building the conjunction.
+     */
+    public int andExists(int f, int g, int cube) {
+        maybeGc(f, g, cube);
+        return andExistsRec(f, g, cube);
+    }
+
+    /**
+     * Renames variable {@code v} of {@code f} to {@code map[v]}; variables with
+     * {@code map[v] < 0} are left alone.
+     */
+    public int replace(int f, int[] map) {
+        maybeGc(f);
+        return replaceRec(f, map, new HashMap<>());
+    }
+
+    /**
+     * The number of satisfying assignments of {@code f} over all {@link #varCount()} variables.
+     */
+    public double satCount(int f) {
+        return satCountRec(f, new HashMap<>()) * Math.pow(2, var[f]);
+    }
+
+    /**
+     * One satisfying assignment of {@code f}: entry {@code i} is 0 or 1 for the variables on the
+     * chosen path and -1 for the others. Returns {@code null} if {@code f} is unsatisfiable.
+     */
+    public int[] anySat(int f) {
+        if(f == FALSE) return null;
+        int[] res = new int[varCount];
+        Arrays.fill(res, -1);
+        while(f != TRUE){
+            if(low[f] != FALSE){
+                res[var[f]] = 0;
+                f = low[f];
+            }
+            else {
+                res[var[f]] = 1;
+                f = high[f];
+            }
+        }
+        return res;
+    }
+
+    private int iteRec(int f, int g, int h) {
+        if(f == TRUE) return g;
+        if(f == FALSE) return h;
+        if(g == h) return g;
+        if(g == TRUE && h == FALSE) return f;
+        int cached = cacheLookup(OP_ITE, f, g, h);
+        if(cached >= 0) return cached;
+        int v = Math.min(var[f], Math.min(var[g], var[h]));
+        int lo = iteRec(cofactor(f, v, false), cofactor(g, v, false), cofactor(h, v, false));
+        int hi = iteRec(cofactor(f, v, true), cofactor(g, v, true), cofactor(h, v, true));
+        int res = mk(v, lo, hi);
+        cacheStore(OP_ITE, f, g, h, res);
+        return res;
+    }
+
+    private int existsRec(int f, int cube) {
+        if(f == TRUE || f == FALSE) return f;
+        while(cube != TRUE && var[cube] < var[f]) cube = high[cube];
+        if(cube == TRUE) return f;
+        int cached = cacheLookup(OP_EXISTS, f, cube, 0);
+        if(cached >= 0) return cached;
+        int res;
+        if(var[cube] == var[f])
+            res = iteRec(existsRec(low[f], high[cube]), TRUE, existsRec(high[f], high[cube]));
+        else
+            res = mk(var[f], existsRec(low[f], cube), existsRec(high[f], cube));
+        cacheStore(OP_EXISTS, f, cube, 0, res);
+        return res;
+    }
+
+    private int andExistsRec(int f, int g, int cube) {
+        if(f == FALSE || g == FALSE) return FALSE;
+        if(f == TRUE && g == TRUE) return TRUE;
+        if(f == TRUE || f == g) return existsRec(g, cube);
+        if(g == TRUE) return existsRec(f, cube);
+        int v = Math.min(var[f], var[g]);
+        while(cube != TRUE && var[cube] < v) cube = high[cube];
+        if(cube == TRUE) return iteRec(f, g, FALSE);
+        if(f > g){
+            int t = f;
+            f = g;
+            g = t;
+        }
+        int cached = cacheLookup(OP_AND_EXISTS, f, g, cube);
+        if(cached >= 0) return cached;
+        int res;
+        if(var[cube] == v){
+            int rest = high[cube];
+            int lo = andExistsRec(cofactor(f, v, false), cofactor(g, v, false), rest);
+            res = lo == TRUE ? TRUE : iteRec(lo, TRUE, andExistsRec(cofactor(f, v, true), cofactor(g, v, true), rest));
+        }
+        else
+            res = mk(v, andExistsRec(cofactor(f, v, false), cofactor(g, v, false), cube),
+                    andExistsRec(cofactor(f, v, true), cofactor(g, v, true), cube));
+        cacheStore(OP_AND_EXISTS, f, g, cube, res);
+        return res;
+    }
+
+    private int replaceRec(int f, int[] map, Map<Integer, Integer> memo) {
+        if(f == TRUE || f == FALSE) return f;
+        Integer cached = memo.get(f);
+        if(cached != null) return cached;
+        int v = var[f];
+        int target = v < map.length && map[v] >= 0 ? map[v] : v;
+        int res = iteRec(mk(target, FALSE, TRUE), replaceRec(high[f], map, memo), replaceRec(low[f], map, memo));
+        memo.put(f, res);
+        return res;
+    }
+
+    private double satCountRec(int f, Map<Integer, Double> memo) {
+        if(f == FALSE) return 0;
+        if(f == TRUE) return 1;
+        Double cached = memo.get(f);
+        if(cached != null) return cached;
+        double res = satCountRec(low[f], memo) * Math.pow(2, var[low[f]] - var[f] - 1)
+                + satCountRec(high[f], memo) * Math.pow(2, var[high[f]] - var[f] - 1);
+        memo.put(f, res);
+        return res;
+    }
+
+    private int cofactor(int f, int v, boolean value) {
+        if(var[f] != v) return f;
+        return value ? high[f] : low[f];
+    }
+
+    private void checkVar(int i) {
+        if(i < 0 || i >= varCount) throw new IllegalArgumentException("No such BDD variable: " + i);
+    }
+
+    // --- unique table
+
+    private int mk(int v, int lo, int hi) {
+        if(lo == hi) return lo;
+        int b = bucket(v, lo, hi);
+        for(int n = buckets[b]; n >= 0; n = next[n])
+            if(var[n] == v && low[n] == lo && high[n] == hi) return n;
+        if(freeList < 0){
+            grow();
+            b = bucket(v, lo, hi);
+        }
+        int n = freeList;
+        freeList = low[n];
+        var[n] = v;
+        low[n] = lo;
+        high[n] = hi;
+        refs[n] = 0;
+        next[n] = buckets[b];
+        buckets[b] = n;
+        used++;
+        return n;
+    }
+
+    private int bucket(int v, int lo, int hi) {
+        int h = v * 0x9E3779B1 + lo * 0x85EBCA6B + hi * 0xC2B2AE35;
+        return (h ^ (h >>> 16)) & (buckets.length - 1);
+    }
+
+    private void allocate(int size) {
+        var = new int[size];
+        low = new int[size];
+        high = new int[size];
+        next = new int[size];
+        refs = new int[size];
+        buckets = new int[size];
+        Arrays.fill(buckets, -1);
+    }
+
+    // nodes keep their index when the table grows, so results held by callers stay valid
+    private void grow() {
+        int oldSize = var.length;
+        int size = oldSize * 2;
+        var = Arrays.copyOf(var, size);
+        low = Arrays.copyOf(low, size);
+        high = Arrays.copyOf(high, size);
+        next = Arrays.copyOf(next, size);
+        refs = Arrays.copyOf(refs, size);
+        buckets = new int[size];
+        Arrays.fill(buckets, -1);
+        for(int n = 2; n < oldSize; n++)
+            if(var[n] != FREE) link(n);
+        for(int n = size - 1; n >= oldSize; n--) free(n);
+        gcThreshold = size / 2;
+        resizeCache(size);
+    }
+
+    private void link(int n) {
+        int b = bucket(var[n], low[n], high[n]);
+        next[n] = buckets[b];
+        buckets[b] = n;
+    }
+
+    private void free(int n) {
+        var[n] = FREE;
+        refs[n] = 0;
+        low[n] = freeList;
+        freeList = n;
+    }
+
+    // --- operation cache
+
+    private void resizeCache(int size) {
+        cacheOp = new int[size];
+        cacheA = new int[size];
+        cacheB = new int[size];
+        cacheC = new int[size];
+        cacheRes = new int[size];
+        Arrays.fill(cacheOp, -1);
+    }
+
+    private int cacheSlot(int op, int a, int b, int c) {
+        int h = op * 0x27D4EB2D + a * 0x9E3779B1 + b * 0x85EBCA6B + c * 0xC2B2AE35;
+        return (h ^ (h >>> 15)) & (cacheOp.length - 1);
+    }
+
+    private int cacheLookup(int op, int a, int b, int c) {
+        int slot = cacheSlot(op, a, b, c);
+        if(cacheOp[slot] == op && cacheA[slot] == a && cacheB[slot] == b && cacheC[slot] == c)
+            return cacheRes[slot];
+        return -1;
+    }
+
+    private void cacheStore(int op, int a, int b, int c, int res) {
+        int slot = cacheSlot(op, a, b, c);
+        cacheOp[slot] = op;
+        cacheA[slot] = a;
+        cacheB[slot] = b;
+        cacheC[slot] = c;
+        cacheRes[slot] = res;
+    }
+}
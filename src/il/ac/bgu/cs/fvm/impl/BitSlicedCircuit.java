@@ -0,0 +1,17 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.circuits.Circuit;
+
+/**
+ * A circuit that can evaluate 64 input/register combinations at once. Every signal is a
+ * {@code long} whose bit {@code k} is the signal's value in lane {@code k}; signals are
+ * ordered as the circuit's input, register and output name sets iterate.
+ */
+public interface BitSlicedCircuit extends Circuit {
+
+    /**
+     * Fills {@code nextRegisters} and {@code outputs} with the register update and the outputs
+     * for all 64 lanes of {@code inputs} and {@code registers}.
+     */
+    void evaluate(long[] inputs, long[] registers, long[] nextRegisters, long[] outputs);
+}
@@ -0,0 +1,124 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.channelsystem.ChannelSystem;
+import il.ac.bgu.cs.fvm.channelsystem.InterleavingActDef;
+import il.ac.bgu.cs.fvm.programgraph.ActionDef;
+import il.ac.bgu.cs.fvm.programgraph.ConditionDef;
+import il.ac.bgu.cs.fvm.programgraph.PGTransition;
+import il.ac.bgu.cs.fvm.programgraph.ProgramGraph;
+
+import java.util.*;
+
+/**
+ * The transitions of a channel system, indexed once by process and location.
+ * Transitions leaving a location are split into local ones and one-sided
+ * (handshake) sends and receives; the latter are grouped by channel name, so
+ * finding the partners of a handshake action is a map lookup. Guards and local
+ * effects are compiled once per transition here, so exploration never goes back to
+ * the shared compiler caches; the index is read-only once built.
+ */
+final class ChannelSystemIndex<L, A> {
+
+    /**
+     * The transitions of one process leaving one location.
+     */
+    static final class LocationTransitions<L, A> {
+        final List<PGTransition<L, A>> local = new ArrayList<>();
+        /** one-sided transitions, in program graph order, with the channel each one uses */
+        final List<PGTransition<L, A>> oneSided = new ArrayList<>();
+        final List<String> oneSidedChannels = new ArrayList<>();
+        final Map<String, List<PGTransition<L, A>>> sends = new HashMap<>();
+        final Map<String, List<PGTransition<L, A>>> receives = new HashMap<>();
+
+        /**
+         * The one-sided transitions here that can complete a handshake with {@code t} on {@code channel}.
+         */
+        List<PGTransition<L, A>> partnersOf(PGTransition<?, ?> t, String channel) {
+            // a receive is matched by sends, anything else by receives
+            Map<String, List<PGTransition<L, A>>> candidates = isReceive(t) ? sends : receives;
+            return candidates.getOrDefault(channel, Collections.emptyList());
+        }
+    }
+
+    private final List<Map<L, LocationTransitions<L, A>>> processes = new ArrayList<>();
+    private final LocationTransitions<L, A> none = new LocationTransitions<>();
+    private final Map<PGTransition<L, A>, NanoPromelaCompiler.Condition> guards = new IdentityHashMap<>();
+    private final Map<PGTransition<L, A>, NanoPromelaCompiler.Effect> effects = new IdentityHashMap<>();
+    private final Set<ActionDef> effect;
+    private final Set<ConditionDef> cond;
+
+    /**
+     * @param effect used for the local actions the compiler does not handle
+     * @param cond   used for the guards the compiler does not handle
+     */
+    ChannelSystemIndex(ChannelSystem<L, A> cs, InterleavingActDef channelActionDef, Set<ActionDef> effect, Set<ConditionDef> cond) {
+        this.effect = effect;
+        this.cond = cond;
+        for(ProgramGraph<L, A> pg: cs.getProgramGraphs()){
+            Map<L, LocationTransitions<L, A>> byLocation = new HashMap<>();
+            for(PGTransition<L, A> t: pg.getTransitions()){
+                LocationTransitions<L, A> out = byLocation.computeIfAbsent(t.getFrom(), k -> new LocationTransitions<>());
+                String action = t.getAction().toString();
+                guards.put(t, NanoPromelaCompiler.condition(t.getCondition()));
+                if(!channelActionDef.isOneSidedAction(action)){
+                    out.local.add(t);
+                    if(t.getAction() instanceof String)
+                        effects.put(t, NanoPromelaCompiler.effect(action));
+                    continue;
+                }
+                String channel = channelName(action);
+                out.oneSided.add(t);
+                out.oneSidedChannels.add(channel);
+                if(action.contains("!"))
+                    out.sends.computeIfAbsent(channel, k -> new ArrayList<>()).add(t);
+                if(action.contains("?"))
+                    out.receives.computeIfAbsent(channel, k -> new ArrayList<>()).add(t);
+            }
+            processes.add(byLocation);
+        }
+    }
+
+    int processCount() {
+        return processes.size();
+    }
+
+    LocationTransitions<L, A> outgoing(int process, L location) {
+        return processes.get(process).getOrDefault(location, none);
+    }
+
+    /**
+     * Whether the guard of {@code t} holds in {@code eval}.
+     */
+    boolean isEnabled(PGTransition<L, A> t, Map<String, Object> eval) {
+        try {
+            return guards.get(t).test(eval);
+        }
+        catch (NanoPromelaCompiler.Unsupported e){ return ConditionDef.evaluate(cond, eval, t.getCondition()); }
+    }
+
+    /**
+     * The valuation after the local transition {@code t}, or null if its action does not apply.
+     */
+    Map<String, Object> effect(PGTransition<L, A> t, Map<String, Object> eval) {
+        NanoPromelaCompiler.Effect compiled = effects.get(t);
+        if(compiled != null){
+            try {
+                return compiled.apply(eval);
+            }
+            catch (NanoPromelaCompiler.Unsupported e){ /* fall through */ }
+        }
+        return ActionDef.effect(effect, eval, t.getAction());
+    }
+
+    static boolean isReceive(PGTransition<?, ?> t) {
+        return t.getAction().toString().contains("?");
+    }
+
+    /**
+     * The channel of a one-sided action: everything before its last {@code !} or {@code ?}.
+     */
+    static String channelName(String action) {
+        int breakIndex = Math.max(Math.max(action.lastIndexOf('!'), action.lastIndexOf('?')), 0);
+        return action.substring(0, breakIndex);
+    }
+}
@@ -0,0 +1,114 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.circuits.Circuit;
+import il.ac.bgu.cs.fvm.util.Pair;
+
+import java.util.*;
+
+/**
+ * Evaluates a circuit on up to 64 input/register combinations per call, in bit-sliced form:
+ * one {@code long} per signal, bit {@code k} holding lane {@code k}. A {@link BitSlicedCircuit}
+ * does the work with word operations; any other circuit is called lane by lane through
+ * read-only packed map views.
+ */
+public class CircuitEvaluator {
+
+    public static final int LANES = Long.SIZE;
+
+    private final Circuit circuit;
+    private final PackedBooleanMap.Layout inputLayout;
+    private final PackedBooleanMap.Layout registerLayout;
+    private final PackedBooleanMap.Layout outputLayout;
+
+    public CircuitEvaluator(Circuit c) {
+        this.circuit = c;
+        this.inputLayout = new PackedBooleanMap.Layout(c.getInputPortNames());
+        this.registerLayout = new PackedBooleanMap.Layout(c.getRegisterNames());
+        this.outputLayout = new PackedBooleanMap.Layout(c.getOutputPortNames());
+    }
+
+    PackedBooleanMap.Layout inputLayout() {
+        return inputLayout;
+    }
+
+    PackedBooleanMap.Layout registerLayout() {
+        return registerLayout;
+    }
+
+    PackedBooleanMap.Layout outputLayout() {
+        return outputLayout;
+    }
+
+    /**
+     * Evaluates lanes {@code 0..lanes-1}; the other bits of the results are unspecified.
+     */
+    public void evaluate(long[] inputs, long[] registers, int lanes, long[] nextRegisters, long[] outputs) {
+        if(circuit instanceof BitSlicedCircuit){
+            ((BitSlicedCircuit) circuit).evaluate(inputs, registers, nextRegisters, outputs);
+            return;
+        }
+        Arrays.fill(nextRegisters, 0);
+        Arrays.fill(outputs, 0);
+        for(int k = 0; k < lanes; k++){
+            PackedBooleanMap in = new PackedBooleanMap(inputLayout, lane(inputs, k));
+            PackedBooleanMap regs = new PackedBooleanMap(registerLayout, lane(registers, k));
+            setLane(nextRegisters, k, registerLayout.pack(circuit.updateRegisters(in, regs)));
+            setLane(outputs, k, outputLayout.pack(circuit.computeOutputs(in, regs)));
+        }
+    }
+
+    /**
+     * Runs 64 random simulations of {@code steps} steps each, from the initial registers and
+     * with uniformly random inputs, and returns the run of the first lane to raise
+     * {@code output}, up to that state. Returns {@code null} if no lane does.
+     */
+    public List<Pair<Map<String, Boolean>, Map<String, Boolean>>> simulateUntil(String output, int steps, Random random) {
+        int out = outputLayout.bitOf(output);
+        if(out < 0) throw new IllegalArgumentException("No output named " + output);
+        List<long[]> inputHistory = new ArrayList<>();
+        List<long[]> registerHistory = new ArrayList<>();
+        long[] registers = new long[registerLayout.size()];
+        long[] next = new long[registerLayout.size()];
+        long[] outputs = new long[outputLayout.size()];
+        for(int step = 0; step <= steps; step++){
+            long[] inputs = new long[inputLayout.size()];
+            for(int i = 0; i < inputs.length; i++) inputs[i] = random.nextLong();
+            inputHistory.add(inputs);
+            registerHistory.add(registers.clone());
+            evaluate(inputs, registers, LANES, next, outputs);
+            if(outputs[out] != 0){
+                int lane = Long.numberOfTrailingZeros(outputs[out]);
+                List<Pair<Map<String, Boolean>, Map<String, Boolean>>> res = new ArrayList<>();
+                for(int s = 0; s <= step; s++)
+                    res.add(new Pair<>(new PackedBooleanMap(inputLayout, lane(inputHistory.get(s), lane)),
+                            new PackedBooleanMap(registerLayout, lane(registerHistory.get(s), lane))));
+                return res;
+            }
+            long[] t = registers;
+            registers = next;
+            next = t;
+        }
+        return null;
+    }
+
+    /**
+     * The values of lane {@code k}, packed one signal per bit.
+     */
+    static long lane(long[] words, int k) {
+        long res = 0;
+        for(int i = 0; i < words.length; i++)
+            res |= ((words[i] >>> k) & 1L) << i;
+        return res;
+    }
+
+    /**
+     * Sets lane {@code k} of {@code words} to the packed values {@code bits}.
+     */
+    static void setLane(long[] words, int k, long bits) {
+        long mask = 1L << k;
+        for(int i = 0; i < words.length; i++){
+            if(((bits >>> i) & 1L) != 0) words[i] |= mask;
+            else words[i] &= ~mask;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.programgraph.ActionDef;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An {@link ActionDef} that runs nano-promela actions through {@link NanoPromelaCompiler},
+ * parsing each distinct action once. Actions the compiler does not handle are passed to the
+ * wrapped definition. Actions known up front are compiled when the definition is created,
+ * so they never depend on the compiler's bounded cache.
+ */
+public class CompiledActDef implements ActionDef {
+
+    private final ActionDef delegate;
+    private final Map<String, NanoPromelaCompiler.Effect> compiled;
+
+    public CompiledActDef(ActionDef delegate) {
+        this(delegate, Collections.emptySet());
+    }
+
+    /**
+     * @param actions the actions to compile now; others are compiled on first use
+     */
+    public CompiledActDef(ActionDef delegate, Collection<?> actions) {
+        this.delegate = delegate;
+        this.compiled = new HashMap<>();
+        for(Object action: actions)
+            if(action instanceof String)
+                compiled.put((String) action, NanoPromelaCompiler.effect((String) action));
+    }
+
+    @Override
+    public boolean isMatchingAction(Object candidate) {
+        return delegate.isMatchingAction(candidate);
+    }
+
+    @Override
+    public Map<String, Object> effect(Map<String, Object> eval, Object action) {
+        if(!(action instanceof String))
+            return delegate.effect(eval, action);
+        try {
+            NanoPromelaCompiler.Effect effect = compiled.get(action);
+            if(effect == null) effect = NanoPromelaCompiler.effect((String) action);
+            return effect.apply(eval);
+        }
+        catch (NanoPromelaCompiler.Unsupported e){ return delegate.effect(eval, action); }
+    }
+}
@@ -0,0 +1,44 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.programgraph.ConditionDef;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link ConditionDef} that evaluates nano-promela guards through {@link NanoPromelaCompiler},
+ * parsing each distinct guard once. Guards the compiler does not handle are passed to the
+ * wrapped definition. Guards known up front are compiled when the definition is created,
+ * so they never depend on the compiler's bounded cache.
+ */
+public class CompiledCondDef implements ConditionDef {
+
+    private final ConditionDef delegate;
+    private final Map<String, NanoPromelaCompiler.Condition> compiled;
+
+    public CompiledCondDef(ConditionDef delegate) {
+        this(delegate, Collections.emptySet());
+    }
+
+    /**
+     * @param conditions the guards to compile now; others are compiled on first use
+     */
+    public CompiledCondDef(ConditionDef delegate, Collection<String> conditions) {
+        this.delegate = delegate;
+        this.compiled = new HashMap<>();
+        for(String condition: conditions)
+            compiled.put(condition, NanoPromelaCompiler.condition(condition));
+    }
+
+    @Override
+    public boolean evaluate(Map<String, Object> eval, String condition) {
+        try {
+            NanoPromelaCompiler.Condition compiledCondition = compiled.get(condition);
+            if(compiledCondition == null) compiledCondition = NanoPromelaCompiler.condition(condition);
+            return compiledCondition.test(eval);
+        }
+        catch (NanoPromelaCompiler.Unsupported e){ return delegate.evaluate(eval, condition); }
+    }
+}
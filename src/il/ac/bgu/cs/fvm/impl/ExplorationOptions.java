@@ -0,0 +1,84 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Optional settings for building transition systems from program graphs and channel systems,
+ * and for checking omega-regular properties.
+ * The default is a plain sequential exploration of every interleaving.
+ */
+public class ExplorationOptions {
+
+    private ForkJoinPool pool;
+    private Set<String> visibleAtomicPropositions;
+    private ProcessSymmetry symmetry;
+    // negative: enough for the states the search explored
+    private long counterexampleBudget = -1;
+
+    /**
+     * Expand each BFS level in parallel on {@code pool}. Channel systems only.
+     * For {@code verifyAnOmegaRegularProperty}, run the nested depth-first search as CNDFS,
+     * one worker per worker of {@code pool}, sharing the states known to be on no accepting cycle.
+     */
+    public ExplorationOptions parallel(ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    /**
+     * Explore ample sets only. The reduced transition system satisfies the same
+     * stutter-invariant properties over {@code visibleAtomicPropositions} as the full one,
+     * so it can be passed to {@code verifyAnOmegaRegularProperty} with an automaton over
+     * those propositions.
+     */
+    public ExplorationOptions partialOrderReduction(Set<String> visibleAtomicPropositions) {
+        this.visibleAtomicPropositions = visibleAtomicPropositions;
+        return this;
+    }
+
+    /**
+     * Keep one state per orbit of {@code symmetry}. The result satisfies the properties that
+     * do not tell the symmetric processes apart.
+     */
+    public ExplorationOptions symmetry(ProcessSymmetry symmetry) {
+        this.symmetry = symmetry;
+        return this;
+    }
+
+    /**
+     * Let {@code verifyAnOmegaRegularProperty} visit at most {@code maxStates} product states
+     * while shortening a counterexample to a prefix and cycle that are shortest within the
+     * states the search explored. If the budget is not enough, the counterexample found by
+     * the search is returned as is; 0 never shortens. By default the budget is three times
+     * the number of explored states, which is always enough: shortening then costs at most
+     * three passes over what the search already visited.
+     */
+    public ExplorationOptions counterexampleBudget(long maxStates) {
+        this.counterexampleBudget = maxStates;
+        return this;
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    public Set<String> getVisibleAtomicPropositions() {
+        return visibleAtomicPropositions;
+    }
+
+    public ProcessSymmetry getSymmetry() {
+        return symmetry;
+    }
+
+    /**
+     * The budget set by {@link #counterexampleBudget}, or a negative value for the default.
+     */
+    public long getCounterexampleBudget() {
+        return counterexampleBudget;
+    }
+
+    public boolean isPartialOrderReduction() {
+        return visibleAtomicPropositions != null;
+    }
+}
@@ -0,0 +1,74 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.programgraph.ProgramGraph;
+import il.ac.bgu.cs.fvm.util.Pair;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Canonical state components of one channel-system or program-graph exploration. A state
+ * is a pair of a location (vector) and a valuation; both are interned here, so the visited
+ * set and the resulting transition system hold references to shared components instead of
+ * copies. With a {@link ProcessSymmetry}, states are also replaced by their orbit representative.
+ */
+final class ExplorationStore<L> {
+
+    private final VariableLayout layout = new VariableLayout();
+    private final Interner<LocationVector<L>> locations = new Interner<>();
+    private final Interner<Valuation> valuations = new Interner<>();
+    private final ProcessSymmetry symmetry;
+
+    ExplorationStore(ProcessSymmetry symmetry) {
+        this.symmetry = symmetry;
+    }
+
+    /**
+     * The state with location vector {@code locs} and valuation {@code eval}. Only the
+     * components of the resulting (canonical) state are interned.
+     */
+    Pair<List<L>, Map<String, Object>> state(List<L> locs, Map<String, Object> eval) {
+        if(symmetry != null){
+            Pair<Object[], Map<String, Object>> canonical = symmetry.canonicalize(locs, eval);
+            if(canonical != null)
+                return new Pair<>(locations(LocationVector.of(canonical.getFirst())), valuation(canonical.getSecond()));
+        }
+        return new Pair<>(locations(locs), valuation(eval));
+    }
+
+    /**
+     * The program-graph state at {@code location} of {@code pg} with valuation {@code eval}.
+     * Symmetry applies to the component locations of an {@link InterleavedProgramGraph}.
+     */
+    <M> Pair<M, Map<String, Object>> state(ProgramGraph<M, ?> pg, M location, Map<String, Object> eval) {
+        if(symmetry != null && pg instanceof InterleavedProgramGraph){
+            InterleavedProgramGraph<M, ?> ipg = (InterleavedProgramGraph<M, ?>) pg;
+            Pair<Object[], Map<String, Object>> canonical = symmetry.canonicalize(ipg.parts(location), eval);
+            if(canonical != null)
+                return new Pair<>(ipg.location(canonical.getFirst()), valuation(canonical.getSecond()));
+        }
+        return new Pair<>(location, valuation(eval));
+    }
+
+    private List<L> locations(List<? extends L> locs) {
+        return locations.intern(LocationVector.of(locs));
+    }
+
+    /**
+     * {@code locs} with process {@code i} moved to {@code to}; not interned until it becomes part of a {@link #state}.
+     */
+    static <L> List<L> moved(List<L> locs, int i, L to) {
+        return LocationVector.<L>of(locs).with(i, to);
+    }
+
+    /**
+     * {@code locs} with processes {@code i} and {@code j} moved to {@code toI} and {@code toJ}.
+     */
+    static <L> List<L> moved(List<L> locs, int i, L toI, int j, L toJ) {
+        return LocationVector.<L>of(locs).with(i, toI).with(j, toJ);
+    }
+
+    Map<String, Object> valuation(Map<String, Object> eval) {
+        return valuations.intern(Valuation.of(layout, eval));
+    }
+}
@@ -0,0 +1,446 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.exceptions.StateNotFoundException;
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+
+import java.util.*;
+
+/**
+ * An immutable, read-only snapshot of a transition system.
+ * States, actions and atomic propositions are interned to dense ints, and
+ * the transition relation and labeling are stored in compressed-sparse-row
+ * form: the successors of state {@code i} are {@code postTargets[postOffsets[i] .. postOffsets[i+1])},
+ * sorted by action. No {@link Transition} objects are kept; the ones returned
+ * from {@link #getTransitions()} are created while iterating.
+ */
+public class FrozenTransitionSystem<STATE, ACTION, ATOMIC_PROPOSITION> implements IndexedTransitionSystem<STATE, ACTION, ATOMIC_PROPOSITION> {
+
+    private String name;
+
+    private final Object[] states;
+    private final Map<STATE, Integer> stateIds;
+    private final Object[] actions;
+    private final Map<ACTION, Integer> actionIds;
+    private final Object[] aps;
+    private final Map<ATOMIC_PROPOSITION, Integer> apIds;
+    private final BitSet initial;
+    private final Set<STATE> initialStates;
+
+    private final int[] postOffsets;
+    private final int[] postTargets;
+    private final int[] postActions;
+    private final int[] preOffsets;
+    private final int[] preSources;
+    private final int[] preActions;
+    private final int[] labelOffsets;
+    private final int[] labelAps;
+
+    public static <S, A, P> FrozenTransitionSystem<S, A, P> of(TransitionSystem<S, A, P> ts) {
+        if(ts instanceof FrozenTransitionSystem) return (FrozenTransitionSystem<S, A, P>) ts;
+        return new FrozenTransitionSystem<>(ts);
+    }
+
+    private FrozenTransitionSystem(TransitionSystem<STATE, ACTION, ATOMIC_PROPOSITION> ts) {
+        name = ts.getName();
+
+        states = ts.getStates().toArray();
+        stateIds = intern(states);
+        actions = ts.getActions().toArray();
+        actionIds = intern(actions);
+        aps = ts.getAtomicPropositions().toArray();
+        apIds = intern(aps);
+
+        initial = new BitSet(states.length);
+        for(STATE s: ts.getInitialStates())
+            initial.set(stateIds.get(s));
+        initialStates = Collections.unmodifiableSet(new HashSet<>(ts.getInitialStates()));
+
+        int n = states.length;
+        Set<Transition<STATE, ACTION>> transitions = ts.getTransitions();
+        int[] from = new int[transitions.size()];
+        int[] act = new int[transitions.size()];
+        int[] to = new int[transitions.size()];
+        int m = 0;
+        for(Transition<STATE, ACTION> t: transitions){
+            from[m] = stateIds.get(t.getFrom());
+            act[m] = actionIds.get(t.getAction());
+            to[m] = stateIds.get(t.getTo());
+            m++;
+        }
+
+        postOffsets = new int[n + 1];
+        postTargets = new int[m];
+        postActions = new int[m];
+        buildRows(n, from, act, to, postOffsets, postActions, postTargets);
+
+        preOffsets = new int[n + 1];
+        preSources = new int[m];
+        preActions = new int[m];
+        buildRows(n, to, act, from, preOffsets, preActions, preSources);
+
+        labelOffsets = new int[n + 1];
+        int labelCount = 0;
+        for(int i = 0; i < n; i++)
+            labelCount += ts.getLabel(state(i)).size();
+        labelAps = new int[labelCount];
+        int pos = 0;
+        for(int i = 0; i < n; i++){
+            labelOffsets[i] = pos;
+            for(ATOMIC_PROPOSITION p: ts.getLabel(state(i)))
+                labelAps[pos++] = apIds.get(p);
+            Arrays.sort(labelAps, labelOffsets[i], pos);
+        }
+        labelOffsets[n] = pos;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Map<T, Integer> intern(Object[] values) {
+        Map<T, Integer> ids = new HashMap<>(values.length * 2);
+        for(int i = 0; i < values.length; i++)
+            ids.put((T) values[i], i);
+        return ids;
+    }
+
+    /**
+     * Groups the edges (keys[e], labels[e], values[e]) into rows by key, each row sorted by label then value.
+     */
+    private static void buildRows(int n, int[] keys, int[] labels, int[] values, int[] offsets, int[] outLabels, int[] outValues) {
+        for(int key: keys)
+            offsets[key + 1]++;
+        for(int i = 0; i < n; i++)
+            offsets[i + 1] += offsets[i];
+
+        long[] packed = new long[keys.length];
+        int[] fill = Arrays.copyOf(offsets, n);
+        for(int e = 0; e < keys.length; e++)
+            packed[fill[keys[e]]++] = ((long) labels[e] << 32) | values[e];
+
+        for(int i = 0; i < n; i++){
+            Arrays.sort(packed, offsets[i], offsets[i + 1]);
+        }
+        for(int e = 0; e < packed.length; e++){
+            outLabels[e] = (int) (packed[e] >>> 32);
+            outValues[e] = (int) packed[e];
+        }
+    }
+
+    // Integer-level access, for algorithms that work on state ids directly.
+
+    int stateCount() {
+        return states.length;
+    }
+
+    int idOf(Object s) {
+        Integer id = stateIds.get(s);
+        return id == null ? -1 : id;
+    }
+
+    @SuppressWarnings("unchecked")
+    STATE state(int id) {
+        return (STATE) states[id];
+    }
+
+    boolean isInitial(int id) {
+        return initial.get(id);
+    }
+
+    int postBegin(int id) {
+        return postOffsets[id];
+    }
+
+    int postEnd(int id) {
+        return postOffsets[id + 1];
+    }
+
+    int postTarget(int index) {
+        return postTargets[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    ACTION postAction(int index) {
+        return (ACTION) actions[postActions[index]];
+    }
+
+    // IndexedTransitionSystem
+
+    @Override
+    public Set<STATE> postStates(STATE s) {
+        return collect(s, postOffsets, postActions, postTargets, -1);
+    }
+
+    @Override
+    public Set<STATE> postStates(STATE s, ACTION a) {
+        Integer action = actionIds.get(a);
+        return action == null ? new HashSet<>() : collect(s, postOffsets, postActions, postTargets, action);
+    }
+
+    @Override
+    public Set<STATE> preStates(STATE s) {
+        return collect(s, preOffsets, preActions, preSources, -1);
+    }
+
+    @Override
+    public Set<STATE> preStates(STATE s, ACTION a) {
+        Integer action = actionIds.get(a);
+        return action == null ? new HashSet<>() : collect(s, preOffsets, preActions, preSources, action);
+    }
+
+    @Override
+    public Map<ACTION, Set<STATE>> outgoing(STATE s) {
+        int id = idOf(s);
+        if(id < 0) return Collections.emptyMap();
+        Map<ACTION, Set<STATE>> res = new LinkedHashMap<>();
+        for(int e = postOffsets[id]; e < postOffsets[id + 1]; e++)
+            res.computeIfAbsent(postAction(e), k -> new HashSet<>()).add(state(postTargets[e]));
+        return Collections.unmodifiableMap(res);
+    }
+
+    private Set<STATE> collect(STATE s, int[] offsets, int[] rowActions, int[] rowValues, int action) {
+        Set<STATE> res = new HashSet<>();
+        int id = idOf(s);
+        if(id < 0) return res;
+        for(int e = offsets[id]; e < offsets[id + 1]; e++){
+            if(action < 0 || rowActions[e] == action)
+                res.add(state(rowValues[e]));
+        }
+        return res;
+    }
+
+    // TransitionSystem - queries
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public Set<ACTION> getActions() {
+        return Collections.unmodifiableSet(actionIds.keySet());
+    }
+
+    @Override
+    public Set<ATOMIC_PROPOSITION> getAtomicPropositions() {
+        return Collections.unmodifiableSet(apIds.keySet());
+    }
+
+    @Override
+    public Set<STATE> getStates() {
+        return Collections.unmodifiableSet(stateIds.keySet());
+    }
+
+    @Override
+    public Set<STATE> getInitialStates() {
+        return initialStates;
+    }
+
+    @Override
+    public Set<ATOMIC_PROPOSITION> getLabel(STATE s) {
+        int id = idOf(s);
+        if(id < 0)
+            throw new StateNotFoundException(s);
+        return new LabelView(id);
+    }
+
+    @Override
+    public Map<STATE, Set<ATOMIC_PROPOSITION>> getLabelingFunction() {
+        return new AbstractMap<STATE, Set<ATOMIC_PROPOSITION>>() {
+            @Override
+            public Set<ATOMIC_PROPOSITION> get(Object key) {
+                int id = idOf(key);
+                return id < 0 ? null : new LabelView(id);
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return idOf(key) >= 0;
+            }
+
+            @Override
+            public int size() {
+                return states.length;
+            }
+
+            @Override
+            public Set<Entry<STATE, Set<ATOMIC_PROPOSITION>>> entrySet() {
+                return new AbstractSet<Entry<STATE, Set<ATOMIC_PROPOSITION>>>() {
+                    @Override
+                    public Iterator<Entry<STATE, Set<ATOMIC_PROPOSITION>>> iterator() {
+                        return new Iterator<Entry<STATE, Set<ATOMIC_PROPOSITION>>>() {
+                            int next = 0;
+
+                            @Override
+                            public boolean hasNext() {
+                                return next < states.length;
+                            }
+
+                            @Override
+                            public Entry<STATE, Set<ATOMIC_PROPOSITION>> next() {
+                                if(!hasNext()) throw new NoSuchElementException();
+                                int id = next++;
+                                return new AbstractMap.SimpleImmutableEntry<>(state(id), new LabelView(id));
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return states.length;
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public Set<Transition<STATE, ACTION>> getTransitions() {
+        return new AbstractSet<Transition<STATE, ACTION>>() {
+            @Override
+            public Iterator<Transition<STATE, ACTION>> iterator() {
+                return new Iterator<Transition<STATE, ACTION>>() {
+                    int from = 0;
+                    int e = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return e < postTargets.length;
+                    }
+
+                    @Override
+                    public Transition<STATE, ACTION> next() {
+                        if(!hasNext()) throw new NoSuchElementException();
+                        while(postOffsets[from + 1] <= e) from++;
+                        Transition<STATE, ACTION> t = new Transition<>(state(from), postAction(e), state(postTargets[e]));
+                        e++;
+                        return t;
+                    }
+                };
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                if(!(o instanceof Transition)) return false;
+                Transition<?, ?> t = (Transition<?, ?>) o;
+                int from = idOf(t.getFrom());
+                int to = idOf(t.getTo());
+                Integer action = actionIds.get(t.getAction());
+                if(from < 0 || to < 0 || action == null) return false;
+                for(int e = postOffsets[from]; e < postOffsets[from + 1]; e++)
+                    if(postActions[e] == action && postTargets[e] == to) return true;
+                return false;
+            }
+
+            @Override
+            public int size() {
+                return postTargets.length;
+            }
+        };
+    }
+
+    // TransitionSystem - mutators are not supported
+
+    @Override
+    public void addAction(ACTION anAction) {
+        throw frozen();
+    }
+
+    @Override
+    public void setInitial(STATE aState, boolean isInitial) {
+        throw frozen();
+    }
+
+    @Override
+    public void addState(STATE state) {
+        throw frozen();
+    }
+
+    @Override
+    public void addTransition(Transition<STATE, ACTION> t) {
+        throw frozen();
+    }
+
+    @Override
+    public void addAtomicProposition(ATOMIC_PROPOSITION p) {
+        throw frozen();
+    }
+
+    @Override
+    public void addToLabel(STATE s, ATOMIC_PROPOSITION l) {
+        throw frozen();
+    }
+
+    @Override
+    public void removeAction(ACTION action) {
+        throw frozen();
+    }
+
+    @Override
+    public void removeAtomicProposition(ATOMIC_PROPOSITION p) {
+        throw frozen();
+    }
+
+    @Override
+    public void removeLabel(STATE s, ATOMIC_PROPOSITION l) {
+        throw frozen();
+    }
+
+    @Override
+    public void removeState(STATE state) {
+        throw frozen();
+    }
+
+    @Override
+    public void removeTransition(Transition<STATE, ACTION> t) {
+        throw frozen();
+    }
+
+    private UnsupportedOperationException frozen() {
+        return new UnsupportedOperationException("Transition system is frozen");
+    }
+
+    /**
+     * Read-only view of the label of a single state.
+     */
+    private class LabelView extends AbstractSet<ATOMIC_PROPOSITION> {
+        private final int id;
+
+        LabelView(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            Integer ap = apIds.get(o);
+            return ap != null && Arrays.binarySearch(labelAps, labelOffsets[id], labelOffsets[id + 1], ap) >= 0;
+        }
+
+        @Override
+        public Iterator<ATOMIC_PROPOSITION> iterator() {
+            return new Iterator<ATOMIC_PROPOSITION>() {
+                int next = labelOffsets[id];
+
+                @Override
+                public boolean hasNext() {
+                    return next < labelOffsets[id + 1];
+                }
+
+                @Override
+                @SuppressWarnings("unchecked")
+                public ATOMIC_PROPOSITION next() {
+                    if(!hasNext()) throw new NoSuchElementException();
+                    return (ATOMIC_PROPOSITION) aps[labelAps[next++]];
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return labelOffsets[id + 1] - labelOffsets[id];
+        }
+    }
+}
@@ -23,14 +23,20 @@ import il.ac.bgu.cs.fvm.transitionsystem.AlternatingSequence;
 import il.ac.bgu.cs.fvm.transitionsystem.Transition;
 import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
 import il.ac.bgu.cs.fvm.util.Pair;
-import il.ac.bgu.cs.fvm.verification.VerificationFailed;
 import il.ac.bgu.cs.fvm.verification.VerificationResult;
 import il.ac.bgu.cs.fvm.programgraph.ParserBasedActDef;
 import il.ac.bgu.cs.fvm.programgraph.ParserBasedCondDef;
-import il.ac.bgu.cs.fvm.verification.VerificationSucceeded;
 
 import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
 
 import static il.ac.bgu.cs.fvm.nanopromela.NanoPromelaFileReader.pareseNanoPromelaFile;
 import static il.ac.bgu.cs.fvm.nanopromela.NanoPromelaFileReader.pareseNanoPromelaString;
@@ -51,6 +57,13 @@ public class FvmFacadeImpl implements FvmFacade {
     @Override
     public <S, A, P> boolean isActionDeterministic(TransitionSystem<S, A, P> ts) {
         if(ts.getInitialStates().size() > 1) return false;
+        if(ts instanceof IndexedTransitionSystem){
+            IndexedTransitionSystem<S,A,P> impl = (IndexedTransitionSystem<S,A,P>) ts;
+            for(S state: ts.getStates())
+                for(Set<S> next: impl.outgoing(state).values())
+                    if(next.size() > 1) return false;
+            return true;
+        }
         Set<Transition<S,A>> transitions = ts.getTransitions();
         for(S state: ts.getStates()){
             Set<A> actions = new HashSet<>();
@@ -68,9 +81,11 @@ public class FvmFacadeImpl implements FvmFacade {
     public <S, A, P> boolean isAPDeterministic(TransitionSystem<S, A, P> ts) {
         if(ts.getInitialStates().size() > 1) return false;
         Map<S, Set<P>> labels = ts.getLabelingFunction();
+        // our own labels are interned, so equal labels are the same object
+        boolean interned = ts instanceof TransitionSystemImpl;
         for(S state: labels.keySet()){
             Set<S> postStates = post(ts, state);
-            Set<Set<P>> labelSets = new HashSet<>();
+            Set<Set<P>> labelSets = interned ? Collections.newSetFromMap(new IdentityHashMap<>()) : new HashSet<>();
             for(S post:postStates){
                 if(!labelSets.add(labels.get(post))) return false;
             }
@@ -95,11 +110,8 @@ public class FvmFacadeImpl implements FvmFacade {
         if(!ts.getActions().contains(action))
             throw new ActionNotFoundException(action);
         S next = seq.tail().head();
-        for(Transition<S,A> tr: ts.getTransitions()) {
-            if (!tr.getFrom().equals(state) || !tr.getAction().equals(action)) continue;
-            if(tr.getTo().equals(next))
-                return isExecutionFragment(ts, seq.tail());
-        }
+        if(post(ts, state, action).contains(next))
+            return isExecutionFragment(ts, seq.tail());
         return false;
     }
 
@@ -123,6 +135,8 @@ public class FvmFacadeImpl implements FvmFacade {
     public <S> Set<S> post(TransitionSystem<S, ?, ?> ts, S s) {
         if(!ts.getStates().contains(s))
             throw new StateNotFoundException(s);
+        if(ts instanceof IndexedTransitionSystem)
+            return ((IndexedTransitionSystem<S,?,?>) ts).postStates(s);
         Set<S> post = new HashSet<>();
         for(Transition<S,?> tr: ts.getTransitions()){
             if(tr.getFrom().equals(s))
@@ -144,6 +158,8 @@ public class FvmFacadeImpl implements FvmFacade {
     public <S, A> Set<S> post(TransitionSystem<S, A, ?> ts, S s, A a) {
         if(!ts.getStates().contains(s))
             throw new StateNotFoundException(s);
+        if(ts instanceof IndexedTransitionSystem)
+            return ((IndexedTransitionSystem<S,A,?>) ts).postStates(s, a);
         Set<S> post = new HashSet<>();
         for(Transition<S,?> tr: ts.getTransitions()){
             if(tr.getFrom().equals(s) && tr.getAction().equals(a))
@@ -165,6 +181,8 @@ public class FvmFacadeImpl implements FvmFacade {
     public <S> Set<S> pre(TransitionSystem<S, ?, ?> ts, S s) {
         if(!ts.getStates().contains(s))
             throw new StateNotFoundException(s);
+        if(ts instanceof IndexedTransitionSystem)
+            return ((IndexedTransitionSystem<S,?,?>) ts).preStates(s);
         Set<S> pre = new HashSet<>();
         for(Transition<S,?> tr: ts.getTransitions()){
             if(tr.getTo().equals(s))
@@ -186,6 +204,8 @@ public class FvmFacadeImpl implements FvmFacade {
     public <S, A> Set<S> pre(TransitionSystem<S, A, ?> ts, S s, A a) {
         if(!ts.getStates().contains(s))
             throw new StateNotFoundException(s);
+        if(ts instanceof IndexedTransitionSystem)
+            return ((IndexedTransitionSystem<S,A,?>) ts).preStates(s, a);
         Set<S> pre = new HashSet<>();
         for(Transition<S,?> tr: ts.getTransitions()){
             if(tr.getTo().equals(s) && tr.getAction().equals(a))
@@ -205,20 +225,74 @@ public class FvmFacadeImpl implements FvmFacade {
 
     @Override
     public <S, A> Set<S> reach(TransitionSystem<S, A, ?> ts) {
-        Set<S> states = new HashSet<>();
-        Set<S> init = ts.getInitialStates();
-        boolean allTerminal = false;
-        while(!allTerminal){
-            allTerminal = true;
-            for(S state: init){
-                if(states.contains(state)) continue;
-                if(!isStateTerminal(ts, state))
-                    allTerminal=false;
+        if(ts instanceof FrozenTransitionSystem)
+            return reachFrozen((FrozenTransitionSystem<S, A, ?>) ts);
+        IndexedTransitionSystem<S, A, ?> its = indexed(ts);
+        Set<S> visited = new HashSet<>(ts.getInitialStates());
+        Deque<S> worklist = new ArrayDeque<>(visited);
+        while(!worklist.isEmpty()){
+            S state = worklist.removeFirst();
+            for(S next: its.postStates(state)){
+                if(visited.add(next))
+                    worklist.addLast(next);
             }
-            states.addAll(init);
-            init = post(ts,init);
         }
-        return states;
+        return visited;
+    }
+
+    /**
+     * Level-synchronous parallel reachability: each BFS level is expanded on {@code pool},
+     * with newly found states claimed through a concurrent visited set.
+     */
+    public <S, A> Set<S> reach(TransitionSystem<S, A, ?> ts, ForkJoinPool pool) {
+        IndexedTransitionSystem<S, A, ?> its = indexed(ts);
+        Set<S> visited = ConcurrentHashMap.newKeySet();
+        List<S> frontier = new ArrayList<>(ts.getInitialStates());
+        visited.addAll(frontier);
+        while(!frontier.isEmpty()){
+            List<S> level = frontier;
+            frontier = pool.submit(() -> level.parallelStream()
+                    .flatMap(state -> its.postStates(state).stream())
+                    .filter(visited::add)
+                    .collect(Collectors.toList())).join();
+        }
+        return visited;
+    }
+
+    private <S> Set<S> reachFrozen(FrozenTransitionSystem<S, ?, ?> ts) {
+        int n = ts.stateCount();
+        BitSet visited = new BitSet(n);
+        int[] worklist = new int[n];
+        int head = 0, tail = 0;
+        for(int id = 0; id < n; id++){
+            if(ts.isInitial(id)){
+                visited.set(id);
+                worklist[tail++] = id;
+            }
+        }
+        while(head < tail){
+            int id = worklist[head++];
+            for(int e = ts.postBegin(id); e < ts.postEnd(id); e++){
+                int next = ts.postTarget(e);
+                if(!visited.get(next)){
+                    visited.set(next);
+                    worklist[tail++] = next;
+                }
+            }
+        }
+        Set<S> res = new HashSet<>();
+        for(int id = visited.nextSetBit(0); id >= 0; id = visited.nextSetBit(id + 1))
+            res.add(ts.state(id));
+        return res;
+    }
+
+    /**
+     * An immutable snapshot of {@code ts} with states, actions and atomic propositions
+     * interned to dense ints and transitions stored in compressed-sparse-row arrays.
+     * Use it once a system is fully built and only read afterwards.
+     */
+    public <S, A, P> FrozenTransitionSystem<S, A, P> freeze(TransitionSystem<S, A, P> ts) {
+        return FrozenTransitionSystem.of(ts);
     }
 
     @Override
@@ -229,92 +303,73 @@ public class FvmFacadeImpl implements FvmFacade {
     @Override
     public <S1, S2, A, P> TransitionSystem<Pair<S1, S2>, A, P> interleave(TransitionSystem<S1, A, P> ts1, TransitionSystem<S2, A, P> ts2, Set<A> handShakingActions) {
         TransitionSystem<Pair<S1, S2>, A, P> newTS = new TransitionSystemImpl<>();
-        Set<Pair<S1,S2>> states = new HashSet<>();
-        Set<Pair<S1,S2>> initials = new HashSet<>();
-        Set<A> actions = new HashSet<>();
-        Set<P> labels = new HashSet<>();
-        for(S1 s1: ts1.getStates()){
-            for(S2 s2: ts2.getStates()) {
-                states.add(new Pair<>(s1, s2));
+        IndexedTransitionSystem<S1, A, P> its1 = indexed(ts1);
+        IndexedTransitionSystem<S2, A, P> its2 = indexed(ts2);
 
-            }
-        }
-
-        actions.addAll(ts1.getActions());
-        actions.addAll(ts2.getActions());
-        labels.addAll(ts1.getAtomicPropositions());
-        labels.addAll(ts2.getAtomicPropositions());
-        newTS.addAllStates(states);
-        newTS.addAllActions(actions);
-        newTS.addAllAtomicPropositions(labels);
+        newTS.addAllActions(ts1.getActions());
+        newTS.addAllActions(ts2.getActions());
+        newTS.addAllAtomicPropositions(ts1.getAtomicPropositions());
+        newTS.addAllAtomicPropositions(ts2.getAtomicPropositions());
 
+        // explore forward from the initial pairs, so only reachable pairs are ever created
+        Deque<Pair<S1, S2>> worklist = new ArrayDeque<>();
         for(S1 s1: ts1.getInitialStates()){
             for(S2 s2: ts2.getInitialStates()) {
-                newTS.setInitial(new Pair<>(s1, s2),true);
+                Pair<S1, S2> state = new Pair<>(s1, s2);
+                addInterleavedState(newTS, ts1, ts2, state, worklist);
+                newTS.setInitial(state, true);
             }
         }
 
-        for(Transition<S1,A> t1: ts1.getTransitions()){
-            if(handShakingActions.contains(t1.getAction())) continue;
-            for(S2 s: ts2.getStates()){
-                Transition<Pair<S1,S2>,A> trans =
-                        new Transition<>(new Pair<>(t1.getFrom(),s),t1.getAction(),new Pair<>(t1.getTo(),s));
-                newTS.addTransition(trans);
-            }
-        }
+        while(!worklist.isEmpty()){
+            Pair<S1, S2> from = worklist.removeFirst();
+            S1 s1 = from.getFirst();
+            S2 s2 = from.getSecond();
 
-        for(Transition<S2,A> t2: ts2.getTransitions()){
-            if(handShakingActions.contains(t2.getAction())) continue;
-            for(S1 s: ts1.getStates()){
-                Transition<Pair<S1,S2>,A> trans =
-                        new Transition<>(new Pair<>(s,t2.getFrom()),t2.getAction(),new Pair<>(s,t2.getTo()));
-                newTS.addTransition(trans);
+            for(Map.Entry<A, Set<S1>> e: its1.outgoing(s1).entrySet()){
+                if(handShakingActions.contains(e.getKey())) continue;
+                for(S1 to: e.getValue())
+                    addInterleavedTransition(newTS, ts1, ts2, from, e.getKey(), new Pair<>(to, s2), worklist);
             }
-        }
 
-        for(A action: handShakingActions){
-            Set<S1> fromS1 = new HashSet<>();
-            Set<S1> toS1 = new HashSet<>();
-            Set<S2> fromS2 = new HashSet<>();
-            Set<S2> toS2 = new HashSet<>();
-            for(Transition<S1,A> t1: ts1.getTransitions()) {
-                if (t1.getAction().equals(action)) {
-                    fromS1.add(t1.getFrom());
-                    toS1.add(t1.getTo());
-                }
+            for(Map.Entry<A, Set<S2>> e: its2.outgoing(s2).entrySet()){
+                if(handShakingActions.contains(e.getKey())) continue;
+                for(S2 to: e.getValue())
+                    addInterleavedTransition(newTS, ts1, ts2, from, e.getKey(), new Pair<>(s1, to), worklist);
             }
 
-            for(Transition<S2,A> t2: ts2.getTransitions()) {
-                if (t2.getAction().equals(action)) {
-                    fromS2.add(t2.getFrom());
-                    toS2.add(t2.getTo());
-                }
-            }
-            for(S1 s1: fromS1){
-                for(S2 s2: fromS2){
-                    Pair<S1,S2> from = new Pair<>(s1,s2);
-                    for(S1 s1t: toS1){
-                        for(S2 s2t: toS2){
-                            Pair<S1,S2> to = new Pair<>(s1t,s2t);
-                            if(ts1.getTransitions().contains(new Transition<>(s1,action,s1t)) &&
-                                    ts2.getTransitions().contains(new Transition<>(s2,action,s2t)))
-                                newTS.addTransition(new Transition<>(from, action, to));
-                        }
-                    }
-                }
+            // synchronize: join the handshake successors of both components on the action
+            if(handShakingActions.isEmpty()) continue;
+            Map<A, Set<S2>> out2 = its2.outgoing(s2);
+            for(Map.Entry<A, Set<S1>> e: its1.outgoing(s1).entrySet()){
+                if(!handShakingActions.contains(e.getKey())) continue;
+                Set<S2> toS2 = out2.get(e.getKey());
+                if(toS2 == null) continue;
+                for(S1 to1: e.getValue())
+                    for(S2 to2: toS2)
+                        addInterleavedTransition(newTS, ts1, ts2, from, e.getKey(), new Pair<>(to1, to2), worklist);
             }
         }
 
-        for(Pair<S1,S2> state:states){
-            for(P prop:ts1.getLabel(state.getFirst()))
-                newTS.addToLabel(state,prop);
-            for(P prop:ts2.getLabel(state.getSecond()))
-                newTS.addToLabel(state,prop);
-        }
+        return newTS;
+    }
 
-        removeUnreachableStates(newTS,states);
+    private <S1, S2, A, P> void addInterleavedTransition(TransitionSystem<Pair<S1, S2>, A, P> newTS,
+                                                         TransitionSystem<S1, A, P> ts1, TransitionSystem<S2, A, P> ts2,
+                                                         Pair<S1, S2> from, A action, Pair<S1, S2> to, Deque<Pair<S1, S2>> worklist) {
+        addInterleavedState(newTS, ts1, ts2, to, worklist);
+        newTS.addTransition(new Transition<>(from, action, to));
+    }
 
-        return newTS;
+    private <S1, S2, A, P> void addInterleavedState(TransitionSystem<Pair<S1, S2>, A, P> newTS,
+                                                    TransitionSystem<S1, A, P> ts1, TransitionSystem<S2, A, P> ts2,
+                                                    Pair<S1, S2> state, Deque<Pair<S1, S2>> worklist) {
+        if(newTS.getStates().contains(state)) return;
+        newTS.addState(state);
+        List<P> label = new ArrayList<>(ts1.getLabel(state.getFirst()));
+        label.addAll(ts2.getLabel(state.getSecond()));
+        addAllToLabel(newTS, state, label);
+        worklist.addLast(state);
     }
 
     @Override
@@ -324,49 +379,15 @@ public class FvmFacadeImpl implements FvmFacade {
 
     @Override
     public <L1, L2, A> ProgramGraph<Pair<L1, L2>, A> interleave(ProgramGraph<L1, A> pg1, ProgramGraph<L2, A> pg2) {
-        ProgramGraph<Pair<L1, L2>, A> newPG = new ProgramGraphImpl<>();
-        //Set<Pair<L1,L2>> locations = new HashSet<>();
-
-        for(L1 l1: pg1.getLocations()){
-            for(L2 l2: pg2.getLocations()) {
-                newPG.addLocation(new Pair<>(l1, l2));
-            }
-        }
-
-
-        for(L1 l1: pg1.getInitialLocations()){
-            for(L2 l2: pg2.getInitialLocations()) {
-                newPG.setInitial(new Pair<>(l1, l2),true);
-            }
-        }
-
-        for(List<String> i1: pg1.getInitalizations()){
-            for(List<String> i2: pg2.getInitalizations()) {
-                List<String> newInit = new ArrayList<>();
-                newInit.addAll(i1); newInit.addAll(i2);
-                newPG.addInitalization(newInit);
-            }
-        }
-
-        for(PGTransition<L1,A> tr1: pg1.getTransitions()){
-            for(L2 l: pg2.getLocations()){
-                PGTransition<Pair<L1,L2>,A> trans =
-                        new PGTransition<>(new Pair<>(tr1.getFrom(),l),tr1.getCondition(),tr1.getAction(),
-                                new Pair<>(tr1.getTo(),l));
-                newPG.addTransition(trans);
-            }
-        }
-
-        for(PGTransition<L2,A> tr2: pg2.getTransitions()){
-            for(L1 l: pg1.getLocations()){
-                PGTransition<Pair<L1,L2>,A> trans =
-                        new PGTransition<>(new Pair<>(l,tr2.getFrom()),tr2.getCondition(),tr2.getAction(),
-                                new Pair<>(l,tr2.getTo()));
-                newPG.addTransition(trans);
-            }
-        }
+        return InterleavedProgramGraph.of(pg1, pg2);
+    }
 
-        return newPG;
+    /**
+     * N-ary interleaving of program graphs. Locations are lists with one location
+     * per graph, instead of nested pairs.
+     */
+    public <L, A> ProgramGraph<List<L>, A> interleave(List<? extends ProgramGraph<L, A>> pgs) {
+        return InterleavedProgramGraph.of(pgs);
     }
 
     @Override
@@ -377,140 +398,290 @@ public class FvmFacadeImpl implements FvmFacade {
         Set<String> registers = c.getRegisterNames();
         Set<String> outputs = c.getOutputPortNames();
 
-        String[] inputArr = inputs.toArray(new String[inputs.size()]);
-        String[] regArr = registers.toArray(new String[registers.size()]);
-        String[] outputArr = outputs.toArray(new String[outputs.size()]);
-
-        Set<Pair<Map<String, Boolean>, Map<String, Boolean>>> states = new HashSet<>();
-
-        newTS.addAllAtomicPropositions(inputArr);
-        newTS.addAllAtomicPropositions(regArr);
-        newTS.addAllAtomicPropositions(outputArr);
-
-        int varsNum = inputArr.length+regArr.length;
-        boolean[] bits = new boolean[varsNum];
-
-        for(int i=0;i<Math.pow(2,varsNum);i++){
-            Map<String,Boolean> inState = new HashMap<>();
-            Map<String,Boolean> regState = new HashMap<>();
-            List<String> labels = new ArrayList<>();
-
-            for (int b = varsNum - 1; b >= 0; b--)
-                bits[b] = (i & (1 << b)) != 0;
+        newTS.addAllAtomicPropositions(inputs.toArray(new String[inputs.size()]));
+        newTS.addAllAtomicPropositions(registers.toArray(new String[registers.size()]));
+        newTS.addAllAtomicPropositions(outputs.toArray(new String[outputs.size()]));
+
+        // inputs and registers are packed into longs; only reachable register values are ever built
+        CircuitEvaluator evaluator = new CircuitEvaluator(c);
+        PackedBooleanMap.Layout inputLayout = evaluator.inputLayout();
+        PackedBooleanMap.Layout regLayout = evaluator.registerLayout();
+        PackedBooleanMap.Layout outputLayout = evaluator.outputLayout();
+        if(inputLayout.size() >= Integer.SIZE - 1)
+            throw new IllegalArgumentException("Too many circuit inputs to enumerate: " + inputLayout.size());
+
+        // every input vector is an action, and the input part of a successor of every state
+        PackedBooleanMap[] inputVectors = new PackedBooleanMap[1 << inputLayout.size()];
+        for(int i = 0; i < inputVectors.length; i++){
+            inputVectors[i] = new PackedBooleanMap(inputLayout, i);
+            newTS.addAction(inputVectors[i]);
+        }
+        Map<Long, PackedBooleanMap> regVectors = new HashMap<>();
+
+        Deque<Pair<Map<String, Boolean>, Map<String, Boolean>>> worklist = new ArrayDeque<>();
+        PackedBooleanMap zero = regVectors.computeIfAbsent(0L, bits -> new PackedBooleanMap(regLayout, bits));
+        for(PackedBooleanMap in: inputVectors){
+            Pair<Map<String, Boolean>, Map<String, Boolean>> state = new Pair<>(in, zero);
+            addCircuitState(newTS, state, worklist);
+            newTS.setInitial(state, true);
+        }
 
-            for(int j=0;j<inputArr.length;j++) {
-                inState.put(inputArr[j], bits[j]);
-                if (bits[j]) labels.add(inputArr[j]);
+        // states are expanded in batches, one evaluator lane per state
+        long[] inWords = new long[inputLayout.size()];
+        long[] regWords = new long[regLayout.size()];
+        long[] nextWords = new long[regLayout.size()];
+        long[] outWords = new long[outputLayout.size()];
+        List<Pair<Map<String, Boolean>, Map<String, Boolean>>> batch = new ArrayList<>(CircuitEvaluator.LANES);
+        while(!worklist.isEmpty()){
+            batch.clear();
+            while(!worklist.isEmpty() && batch.size() < CircuitEvaluator.LANES)
+                batch.add(worklist.removeFirst());
+            for(int k = 0; k < batch.size(); k++){
+                CircuitEvaluator.setLane(inWords, k, ((PackedBooleanMap) batch.get(k).first).bits());
+                CircuitEvaluator.setLane(regWords, k, ((PackedBooleanMap) batch.get(k).second).bits());
             }
-
-            boolean isInitial = true;
-            for(int j=0;j<regArr.length;j++) {
-                regState.put(regArr[j], bits[inputArr.length + j]);
-                if(bits[inputArr.length + j]) {
-                    isInitial=false;
-                    labels.add(regArr[j]);
+            evaluator.evaluate(inWords, regWords, batch.size(), nextWords, outWords);
+
+            for(int k = 0; k < batch.size(); k++){
+                Pair<Map<String, Boolean>, Map<String, Boolean>> state = batch.get(k);
+                long outputBits = CircuitEvaluator.lane(outWords, k);
+                List<Object> outputLabel = new ArrayList<>();
+                for(int o = 0; o < outputLayout.size(); o++)
+                    if((outputBits >>> o & 1L) != 0)
+                        outputLabel.add(outputLayout.name(o));
+                addAllToLabel(newTS, state, outputLabel);
+                PackedBooleanMap nextRegs = regVectors.computeIfAbsent(CircuitEvaluator.lane(nextWords, k),
+                        bits -> new PackedBooleanMap(regLayout, bits));
+                for(PackedBooleanMap nextInput: inputVectors){
+                    Pair<Map<String, Boolean>, Map<String, Boolean>> nextState = new Pair<>(nextInput, nextRegs);
+                    addCircuitState(newTS, nextState, worklist);
+                    newTS.addTransition(new Transition<>(state, nextInput, nextState));
                 }
             }
-
-            Pair<Map<String, Boolean>, Map<String, Boolean>> state = new Pair<>(inState,regState);
-            newTS.addState(state);
-            states.add(state);
-            newTS.addAction(inState);
-            newTS.setInitial(state,isInitial);
-            for(String l:labels)
-                newTS.addToLabel(state,l);
-            Map<String,Boolean> out = c.computeOutputs(inState,regState);
-            for(String l:out.keySet())
-                if(out.get(l))
-                    newTS.addToLabel(state,l);
         }
 
-        for(Pair<Map<String, Boolean>, Map<String, Boolean>> state: newTS.getStates()){
-            Map<String, Boolean> ins = state.first;
-            Map<String, Boolean> regs = state.second;
-            for(Pair<Map<String, Boolean>, Map<String, Boolean>> nextState: newTS.getStates()){
-                Map<String, Boolean> nextInput = nextState.first;
-                Map<String, Boolean> nextRegs = c.updateRegisters(ins,regs);
-                newTS.addTransition(new Transition<>(state,nextInput,new Pair<>(nextInput,nextRegs)));
-            }
-        }
+        return newTS;
+    }
 
-        removeUnreachableStates(newTS,states);
+    /**
+     * Adds a circuit state labeled with its inputs and registers that are on. Output labels
+     * are added when the state is expanded.
+     */
+    private void addCircuitState(TransitionSystem<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>, Object> ts,
+                                 Pair<Map<String, Boolean>, Map<String, Boolean>> state, Deque<Pair<Map<String, Boolean>, Map<String, Boolean>>> worklist) {
+        if(ts.getStates().contains(state)) return;
+        ts.addState(state);
+        List<Object> label = new ArrayList<>();
+        for(Map.Entry<String, Boolean> e: state.first.entrySet())
+            if(e.getValue()) label.add(e.getKey());
+        for(Map.Entry<String, Boolean> e: state.second.entrySet())
+            if(e.getValue()) label.add(e.getKey());
+        addAllToLabel(ts, state, label);
+        worklist.addLast(state);
+    }
 
-        return newTS;
+    /**
+     * Checks symbolically, without building a transition system, that {@code output} is on in
+     * every reachable state of {@code c}. A failure holds a shortest run to a state where it is off.
+     * <p>
+     * Circuits should be {@link SymbolicCircuit}s, such as {@link GateCircuit}s. Any other circuit
+     * is evaluated on all 2^(inputs+registers) combinations of values first, which costs more than
+     * {@link #transitionSystemFromCircuit} on the reachable ones.
+     */
+    public VerificationResult<Pair<Map<String, Boolean>, Map<String, Boolean>>> verifyCircuitInvariant(Circuit c, String output) {
+        SymbolicCircuitChecker checker = new SymbolicCircuitChecker(c);
+        return checker.checkInvariant(checker.output(output));
     }
 
     @Override
     public <L, A> TransitionSystem<Pair<L, Map<String, Object>>, A, String> transitionSystemFromProgramGraph(ProgramGraph<L, A> pg, Set<ActionDef> actionDefs, Set<ConditionDef> conditionDefs) {
+        return transitionSystemFromProgramGraph(pg, actionDefs, conditionDefs, new ExplorationOptions());
+    }
+
+    /**
+     * Like {@link #transitionSystemFromProgramGraph(ProgramGraph, Set, Set)}. With partial-order
+     * reduction, the components of an {@link InterleavedProgramGraph} are treated as processes.
+     */
+    public <L, A> TransitionSystem<Pair<L, Map<String, Object>>, A, String> transitionSystemFromProgramGraph(ProgramGraph<L, A> pg, Set<ActionDef> actionDefs,
+                                                                                                             Set<ConditionDef> conditionDefs, ExplorationOptions options) {
         TransitionSystem<Pair<L, Map<String, Object>>, A, String> newTS = new TransitionSystemImpl<>();
-        Set<Pair<L, Map<String, Object>>> allStates = new HashSet<>();
-        Set<Transition<Pair<L, Map<String, Object>>,A>> allTransitions = new HashSet<>();
-
-        for(L loc:pg.getInitialLocations()){
-            if(pg.getInitalizations().isEmpty()){
-                Pair<L, Map<String, Object>> state = new Pair<>(loc,new HashMap<>());
-                newTS.addState(state);
-                allStates.add(state);
-                newTS.setInitial(state, true);
+        Set<A> actions = actionsOf(pg);
+        Set<ActionDef> effects = compileActionDefs(actionDefs, actions);
+        Set<ConditionDef> conditions = compileConditionDefs(conditionDefs, conditionsOf(pg));
+        Function<L, List<PGTransition<L, A>>> outgoing = outgoingTransitions(pg);
+        newTS.addAllActions(actions);
+        // all valuations of this exploration share one variable layout, and equal ones one instance;
+        // with symmetry reduction, every state is replaced by the representative of its orbit
+        ExplorationStore<L> store = new ExplorationStore<>(pg instanceof InterleavedProgramGraph ? options.getSymmetry() : null);
+        UnaryOperator<Pair<L, Map<String, Object>>> canonical = state -> store.state(pg, state.getFirst(), state.getSecond());
+
+        Set<Map<String, Object>> initialEvals = new HashSet<>();
+        if(pg.getInitalizations().isEmpty())
+            initialEvals.add(store.valuation(new HashMap<>()));
+        for(List<String> init: pg.getInitalizations()){
+            Map<String, Object> eval = new HashMap<>();
+            for(String action: init){
+                eval = ActionDef.effect(effects, eval, action);
             }
-            for(List<String> init: pg.getInitalizations()){
-                Set<Map<String, Object>> evals = new HashSet<>();
-                Map<String, Object> eval = new HashMap<>();
-                for(String action: init){
-                    eval = ActionDef.effect(actionDefs, eval, action);
-                }
-                Pair<L, Map<String, Object>> state = new Pair<>(loc,eval);
-                newTS.addState(state);
-                allStates.add(state);
+            initialEvals.add(store.valuation(eval));
+        }
+
+        // explicit-state exploration: every reachable state is expanded exactly once
+        Deque<Pair<L, Map<String, Object>>> worklist = new ArrayDeque<>();
+        for(L loc: pg.getInitialLocations()){
+            for(Map<String, Object> eval: initialEvals){
+                Pair<L, Map<String, Object>> state = canonical.apply(new Pair<>(loc, eval));
+                addProgramGraphState(newTS, state, worklist);
                 newTS.setInitial(state, true);
             }
         }
 
-        boolean addedNewTr = true;
-        while(addedNewTr){
-            addedNewTr = false;
-            for(PGTransition<L, A> tr: pg.getTransitions()) {
-                newTS.addAction(tr.getAction());
-                Set<Pair<L, Map<String, Object>>> states = new HashSet<>();
-                Set<Transition<Pair<L, Map<String, Object>>,A>> transitions = new HashSet<>();
-                for(Pair<L, Map<String, Object>> state:newTS.getStates()){
-                    if(!tr.getFrom().equals(state.getFirst())) continue;
-                    if(!ConditionDef.evaluate(conditionDefs, state.getSecond(),tr.getCondition())) continue;
-                    Map<String, Object> eval = ActionDef.effect(actionDefs,state.getSecond(),tr.getAction());
-                    Pair<L, Map<String, Object>> newState = new Pair<>(tr.getTo(),eval);
-                    states.add(newState);
-                    allStates.add(newState);
-                    transitions.add(new Transition(state, tr.getAction(), newState));
-                    addedNewTr = (addedNewTr || allTransitions.add(new Transition(state, tr.getAction(), newState)));
+        // the valuation after taking tr, or null if tr is disabled
+        BiFunction<Map<String, Object>, PGTransition<?, A>, Map<String, Object>> step = (eval, tr) -> {
+            if(!ConditionDef.evaluate(conditions, eval, tr.getCondition())) return null;
+            return ActionDef.effect(effects, eval, tr.getAction());
+        };
+        PartialOrderReduction por = null;
+        if(options.isPartialOrderReduction() && pg instanceof InterleavedProgramGraph)
+            por = new PartialOrderReduction(((InterleavedProgramGraph<L, A>) pg).components(),
+                    options.getVisibleAtomicPropositions(), action -> false, false);
+
+        List<Transition<Pair<L, Map<String, Object>>, A>> successors = new ArrayList<>();
+        while(!worklist.isEmpty()){
+            Pair<L, Map<String, Object>> state = worklist.removeFirst();
+            successors.clear();
+            if(por == null || !ampleProgramGraphSuccessors((InterleavedProgramGraph<L, A>) pg, por, state, step, canonical, newTS.getStates()::contains, successors)){
+                for(PGTransition<L, A> tr: outgoing.apply(state.getFirst())){
+                    Map<String, Object> eval = step.apply(state.getSecond(), tr);
+                    if(eval != null)
+                        successors.add(new Transition<>(state, tr.getAction(), canonical.apply(new Pair<>(tr.getTo(), eval))));
                 }
-                newTS.addAllStates(states);
-                for(Transition<Pair<L, Map<String, Object>>,A> trans: transitions)
-                    newTS.addTransition(trans);
+            }
+            for(Transition<Pair<L, Map<String, Object>>, A> tr: successors){
+                addProgramGraphState(newTS, tr.getTo(), worklist);
+                newTS.addTransition(tr);
             }
         }
 
-        for(Pair<L,Map<String, Object>> state:newTS.getStates()){
-            newTS.addAtomicProposition(state.getFirst().toString());
-            for(String name:state.getSecond().keySet()) {
-                String condStr = name + " = " + state.getSecond().get(name);
-                newTS.addAtomicProposition(condStr);
-                newTS.addToLabel(state,condStr);
+        return newTS;
+    }
+
+    /**
+     * Adds to {@code out} the successors of {@code state} through an ample set: the enabled
+     * transitions of one component that {@code por} allows and that reach no visited state
+     * (the cycle proviso). Returns false, adding nothing, if no component qualifies.
+     */
+    private <L, A> boolean ampleProgramGraphSuccessors(InterleavedProgramGraph<L, A> pg, PartialOrderReduction por,
+                                                       Pair<L, Map<String, Object>> state,
+                                                       BiFunction<Map<String, Object>, PGTransition<?, A>, Map<String, Object>> step,
+                                                       UnaryOperator<Pair<L, Map<String, Object>>> canonical,
+                                                       Predicate<Pair<L, Map<String, Object>>> visited,
+                                                       List<Transition<Pair<L, Map<String, Object>>, A>> out) {
+        List<?> parts = pg.parts(state.getFirst());
+        for(int i = 0; i < parts.size(); i++){
+            if(!por.canReduce(i, parts.get(i))) continue;
+            List<Transition<Pair<L, Map<String, Object>>, A>> ample = new ArrayList<>();
+            boolean closesCycle = false;
+            for(PGTransition<?, A> tr: pg.componentOutgoing(i, parts.get(i))){
+                Map<String, Object> eval = step.apply(state.getSecond(), tr);
+                if(eval == null) continue;
+                Object[] next = parts.toArray();
+                next[i] = tr.getTo();
+                Pair<L, Map<String, Object>> to = canonical.apply(new Pair<>(pg.location(next), eval));
+                if(visited.test(to)){
+                    closesCycle = true;
+                    break;
+                }
+                ample.add(new Transition<>(state, tr.getAction(), to));
             }
-            newTS.addToLabel(state,state.getFirst().toString());
+            if(closesCycle || ample.isEmpty()) continue;
+            out.addAll(ample);
+            return true;
         }
+        return false;
+    }
 
-        return newTS;
+    private <L, A> void addProgramGraphState(TransitionSystem<Pair<L, Map<String, Object>>, A, String> ts,
+                                             Pair<L, Map<String, Object>> state, Deque<Pair<L, Map<String, Object>>> worklist) {
+        if(ts.getStates().contains(state)) return;
+        ts.addState(state);
+        List<String> label = new ArrayList<>();
+        label.add(state.getFirst().toString());
+        for(String name: state.getSecond().keySet())
+            label.add(name + " = " + state.getSecond().get(name));
+        for(String ap: label)
+            ts.addAtomicProposition(ap);
+        addAllToLabel(ts, state, label);
+        worklist.addLast(state);
+    }
+
+    /**
+     * Outgoing transitions by location. Lazy product graphs compute them on demand;
+     * any other graph is indexed once.
+     */
+    private <L, A> Function<L, List<PGTransition<L, A>>> outgoingTransitions(ProgramGraph<L, A> pg) {
+        if(pg instanceof InterleavedProgramGraph)
+            return ((InterleavedProgramGraph<L, A>) pg)::outgoing;
+        Map<L, List<PGTransition<L, A>>> index = new HashMap<>();
+        for(PGTransition<L, A> tr: pg.getTransitions())
+            index.computeIfAbsent(tr.getFrom(), k -> new ArrayList<>()).add(tr);
+        return loc -> index.getOrDefault(loc, Collections.emptyList());
+    }
+
+    /**
+     * Wraps the parser-based definitions so each distinct action/condition string is parsed once;
+     * the strings of the program graph are compiled up front.
+     */
+    private Set<ActionDef> compileActionDefs(Set<ActionDef> actionDefs, Set<?> actions) {
+        Set<ActionDef> res = new LinkedHashSet<>();
+        for(ActionDef def: actionDefs)
+            res.add(def.getClass() == ParserBasedActDef.class ? new CompiledActDef(def, actions) : def);
+        return res;
+    }
+
+    private Set<ConditionDef> compileConditionDefs(Set<ConditionDef> conditionDefs, Set<String> conditions) {
+        Set<ConditionDef> res = new LinkedHashSet<>();
+        for(ConditionDef def: conditionDefs)
+            res.add(def.getClass() == ParserBasedCondDef.class ? new CompiledCondDef(def, conditions) : def);
+        return res;
+    }
+
+    private <L, A> Set<String> conditionsOf(ProgramGraph<L, A> pg) {
+        if(pg instanceof InterleavedProgramGraph)
+            return ((InterleavedProgramGraph<L, A>) pg).getConditions();
+        Set<String> conditions = new HashSet<>();
+        for(PGTransition<L, A> tr: pg.getTransitions())
+            conditions.add(tr.getCondition());
+        return conditions;
+    }
+
+    private <L, A> Set<A> actionsOf(ProgramGraph<L, A> pg) {
+        if(pg instanceof InterleavedProgramGraph)
+            return ((InterleavedProgramGraph<L, A>) pg).getActions();
+        Set<A> actions = new HashSet<>();
+        for(PGTransition<L, A> tr: pg.getTransitions())
+            actions.add(tr.getAction());
+        return actions;
     }
 
     @Override
     public <L, A> TransitionSystem<Pair<List<L>, Map<String, Object>>, A, String> transitionSystemFromChannelSystem(ChannelSystem<L, A> cs) {
+        return transitionSystemFromChannelSystem(cs, new ExplorationOptions());
+    }
+
+    /**
+     * Like {@link #transitionSystemFromChannelSystem(ChannelSystem)}, explored as {@code options} say.
+     * With only a pool set the result is the same transition system, built in parallel.
+     */
+    public <L, A> TransitionSystem<Pair<List<L>, Map<String, Object>>, A, String> transitionSystemFromChannelSystem(ChannelSystem<L, A> cs, ExplorationOptions options) {
         TransitionSystem<Pair<List<L>, Map<String, Object>>, A, String> newTS = createTransitionSystem();
         Set<ActionDef> effect = new HashSet<>();
-        effect.add(new ParserBasedActDef());
+        effect.add(new CompiledActDef(new ParserBasedActDef()));
         Set<ConditionDef> cond = new HashSet<>();
-        cond.add(new ParserBasedCondDef());
+        cond.add(new CompiledCondDef(new ParserBasedCondDef()));
         List<L> initLocs = new ArrayList<>();
         List<List<String>> allInits = new ArrayList<>();
+        ExplorationStore<L> store = new ExplorationStore<>(options.getSymmetry());
 
         for(int i=0;i<cs.getProgramGraphs().size();i++)
             for(List<String> init : cs.getProgramGraphs().get(i).getInitalizations())
@@ -523,51 +694,34 @@ public class FvmFacadeImpl implements FvmFacade {
             Map<String, Object> varInit = new HashMap<>();
             for(String action : var)
                 varInit = ActionDef.effect(effect, varInit, action);
-            allEvals.add(varInit);
+            allEvals.add(store.valuation(varInit));
         }
 
-        addInitialStatesTSFromCS(newTS, cs, initLocs, allEvals);
-
-        transitionSystemFromCSFromInitialStates(newTS, cs, effect, cond);
-
-        for(Pair<List<L>, Map<String, Object>> state : newTS.getStates())
-        {
-            for(L l: state.getFirst())
-            {
-                newTS.addAtomicProposition(l.toString());
-                newTS.addToLabel(state, l.toString());
-            }
+        addInitialStatesTSFromCS(newTS, cs, initLocs, allEvals, store);
 
-            for(String var : state.second.keySet())
-            {
-                String newAtomicPreposition = var + " = " + state.second.get(var).toString();
-                newTS.addAtomicProposition(newAtomicPreposition);
-                newTS.addToLabel(state,newAtomicPreposition);
-            }
-        }
+        transitionSystemFromCSFromInitialStates(newTS, cs, effect, cond, store, options);
 
         return newTS;
     }
 
     private <L,A> void addInitialStatesTSFromCS(TransitionSystem<Pair<List<L>, Map<String, Object>>, A, String> ts,
-                                                    ChannelSystem<L, A> cs, List<L> newInitLocs, Set<Map<String, Object>> allEvals)
+                                                    ChannelSystem<L, A> cs, List<L> newInitLocs, Set<Map<String, Object>> allEvals,
+                                                    ExplorationStore<L> store)
     {
         int size = newInitLocs.size();
         if(size == cs.getProgramGraphs().size())
         {
             if(allEvals.isEmpty())
             {
-                Pair<List<L>, Map<String, Object>> newState = new Pair<>
-                        (new ArrayList<>(newInitLocs), new HashMap<>());
-                ts.addState(newState);
+                Pair<List<L>, Map<String, Object>> newState = store.state(newInitLocs, new HashMap<>());
+                addChannelSystemState(ts, newState, channelSystemLabel(newState));
                 ts.setInitial(newState, true);
             }
 
             for(Map<String, Object> eval : allEvals)
             {
-                Pair<List<L>, Map<String, Object>> newState = new Pair<>
-                        (new ArrayList<>(newInitLocs), new HashMap<>(eval));
-                ts.addState(newState);
+                Pair<List<L>, Map<String, Object>> newState = store.state(newInitLocs, eval);
+                addChannelSystemState(ts, newState, channelSystemLabel(newState));
                 ts.setInitial(newState, true);
             }
         }
@@ -576,177 +730,257 @@ public class FvmFacadeImpl implements FvmFacade {
             for(L loc : cs.getProgramGraphs().get(size).getInitialLocations())
             {
                 newInitLocs.add(loc);
-                addInitialStatesTSFromCS(ts, cs, newInitLocs, allEvals);
+                addInitialStatesTSFromCS(ts, cs, newInitLocs, allEvals, store);
                 newInitLocs.remove(loc);
             }
         }
     }
 
     private <L, A>void transitionSystemFromCSFromInitialStates(TransitionSystem<Pair<List<L>, Map<String, Object>>, A, String> ts,
-                                                               ChannelSystem<L, A> cs, Set<ActionDef> effect, Set<ConditionDef> cond)
+                                                               ChannelSystem<L, A> cs, Set<ActionDef> effect, Set<ConditionDef> cond,
+                                                               ExplorationStore<L> store, ExplorationOptions options)
     {
         InterleavingActDef channelActionDef = new ParserBasedInterleavingActDef();
-        Deque<Pair<List<L>, Map<String, Object>>> queue = new LinkedList<>(ts.getInitialStates());
+        ChannelSystemIndex<L, A> index = new ChannelSystemIndex<>(cs, channelActionDef, effect, cond);
+        PartialOrderReduction por = !options.isPartialOrderReduction() ? null : new PartialOrderReduction(
+                cs.getProgramGraphs(), options.getVisibleAtomicPropositions(), channelActionDef::isOneSidedAction, true);
+        if(options.getPool() != null)
+        {
+            parallelTransitionSystemFromCS(ts, index, channelActionDef, store, por, options.getPool());
+            return;
+        }
+        Deque<Pair<List<L>, Map<String, Object>>> queue = new ArrayDeque<>(ts.getInitialStates());
         Set<Pair<List<L>, Map<String, Object>>> allreadyChecked = new HashSet<>(ts.getInitialStates());
+        List<Transition<Pair<List<L>, Map<String, Object>>, A>> successors = new ArrayList<>();
         while(!queue.isEmpty())
         {
             Pair<List<L>, Map<String, Object>> fromState = queue.removeFirst();
-            Map<Integer, Set<PGTransition<L, A>>> allPGTransMap = getAllPGTransMapFromState(cs.getProgramGraphs(), fromState);
-            Map<Integer, Set<PGTransition<L, A>>> allOneSidedTransMapRead = getAllOneSidedActionTransFromAllTrans(allPGTransMap, "?");
-            Map<Integer, Set<PGTransition<L, A>>> allOneSidedTransMapWrite = getAllOneSidedActionTransFromAllTrans(allPGTransMap, "!");
-            for(int i = 0; i < allPGTransMap.size(); i++)
-                for(PGTransition<L, A> pgTrans : allPGTransMap.get(i))
+            successors.clear();
+            channelSystemSuccessors(fromState, index, channelActionDef, store, por, allreadyChecked::contains, successors);
+            for(Transition<Pair<List<L>, Map<String, Object>>, A> transition : successors)
+            {
+                ts.addAction(transition.getAction());
+                if(allreadyChecked.add(transition.getTo()))
                 {
-                    String currAction = pgTrans.getAction().toString();
-                    if(ConditionDef.evaluate(cond, fromState.second, pgTrans.getCondition()))
-                    {
-                        if(!channelActionDef.isOneSidedAction(currAction) && ActionDef.effect(effect, fromState.second, pgTrans.getAction()) != null)
-                        {
-                            ts.addAction(pgTrans.getAction());
-                            List<L> locsForNewState = new ArrayList<>(fromState.getFirst());
-                            locsForNewState.set(i, pgTrans.getTo());
-                            Pair<List<L>, Map<String, Object>> toState = new Pair<>(locsForNewState, ActionDef.effect(effect, fromState.second, pgTrans.getAction()));
-                            Transition< Pair<List<L>, Map<String, Object>>, A> newTrans = new Transition<>(fromState, pgTrans.getAction(), toState);
-                            if(!allreadyChecked.contains(toState))
-                            {
-                                ts.addState(toState);
-                                allreadyChecked.add(toState);
-                                queue.addLast(toState);
-                            }
-                            ts.addTransition(newTrans);
-                        }
-                        else
-                        {
-                            Map<Integer, Set<PGTransition<L, A>>> allOneSidedTransToIterate;
-                            String firstQueueName = getQueueNameFromOneSidedAction(currAction);
-                            if(currAction.contains("?"))
-                                allOneSidedTransToIterate = allOneSidedTransMapWrite;
-                            else
-                                allOneSidedTransToIterate = allOneSidedTransMapRead;
-
-                            for(int pgNum = i+1; pgNum < cs.getProgramGraphs().size(); pgNum++)
-                            {
-                                for(PGTransition<L, A> otherPGTrans : allOneSidedTransToIterate.get(pgNum))
-                                {
-                                    if(ConditionDef.evaluate(cond, fromState.second, otherPGTrans.getCondition()) &&
-                                            firstQueueName.equals(getQueueNameFromOneSidedAction(otherPGTrans.getAction().toString())))
-                                    {
-                                        String newAction = currAction + "|" + otherPGTrans.getAction().toString();
-                                        ts.addAction((A)newAction);
-                                        List<L> locsForNewState = new ArrayList<>(fromState.getFirst());
-                                        locsForNewState.set(i, pgTrans.getTo());
-                                        locsForNewState.set(pgNum, otherPGTrans.getTo());
-                                        Pair<List<L>, Map<String, Object>> toState = new Pair<>(locsForNewState, channelActionDef.effect(fromState.second, newAction));
-                                        Transition<Pair<List<L>, Map<String, Object>>, A> newTrans = new Transition<>(fromState, (A)newAction, toState);
-                                        if(!allreadyChecked.contains(toState))
-                                        {
-                                            ts.addState(toState);
-                                            allreadyChecked.add(toState);
-                                            queue.addLast(toState);
-                                        }
-
-                                        ts.addTransition(newTrans);
-                                    }}}}}}}
-    }
-
-    private <L,A> Map<Integer, Set<PGTransition<L, A>>> getAllOneSidedActionTransFromAllTrans(Map<Integer, Set<PGTransition<L, A>>> allPGTransMap, String readOrWrite)
+                    addChannelSystemState(ts, transition.getTo(), channelSystemLabel(transition.getTo()));
+                    queue.addLast(transition.getTo());
+                }
+                ts.addTransition(transition);
+            }
+        }
+    }
+
+    /**
+     * Level-synchronous parallel BFS. Workers expand the states of a level into their own
+     * buffers, claim new states in a concurrent visited set and build their labels. The
+     * calling thread merges each level into {@code ts}, which is not thread-safe, while the
+     * workers already expand the next one.
+     */
+    private <L, A> void parallelTransitionSystemFromCS(TransitionSystem<Pair<List<L>, Map<String, Object>>, A, String> ts,
+                                                       ChannelSystemIndex<L, A> index, InterleavingActDef channelActionDef,
+                                                       ExplorationStore<L> store, PartialOrderReduction por, ForkJoinPool pool)
     {
-        InterleavingActDef channelActionDef = new ParserBasedInterleavingActDef();
-        Map<Integer, Set<PGTransition<L, A>>> res = new HashMap<>();
-        for(int i = 0; i < allPGTransMap.size(); i++)
+        Set<Pair<List<L>, Map<String, Object>>> visited = ConcurrentHashMap.newKeySet();
+        List<Pair<List<L>, Map<String, Object>>> initial = new ArrayList<>(ts.getInitialStates());
+        visited.addAll(initial);
+        ForkJoinTask<ExpandedLevel<L, A>> pending = pool.submit(
+                () -> expandLevel(initial, index, channelActionDef, store, por, visited));
+        while(true)
         {
-            Set<PGTransition<L, A>> pgOneSidedTrans = new HashSet<>();
-            for(PGTransition<L, A> pgTrans : allPGTransMap.get(i))
+            ExpandedLevel<L, A> level = pending.join();
+            if(!level.newStates.isEmpty())
             {
-                if(channelActionDef.isOneSidedAction(pgTrans.getAction().toString()) &&
-                        pgTrans.getAction().toString().contains(readOrWrite))
-                    pgOneSidedTrans.add(pgTrans);
+                List<Pair<List<L>, Map<String, Object>>> frontier = new ArrayList<>(level.newStates.keySet());
+                pending = pool.submit(() -> expandLevel(frontier, index, channelActionDef, store, por, visited));
             }
-            res.put(i, pgOneSidedTrans);
+
+            for(Map.Entry<Pair<List<L>, Map<String, Object>>, List<String>> state : level.newStates.entrySet())
+                addChannelSystemState(ts, state.getKey(), state.getValue());
+            ts.addAllActions(level.actions);
+            for(List<Transition<Pair<List<L>, Map<String, Object>>, A>> buffer : level.buffers)
+                for(Transition<Pair<List<L>, Map<String, Object>>, A> transition : buffer)
+                    ts.addTransition(transition);
+
+            if(level.newStates.isEmpty()) return;
         }
-        return res;
     }
 
-    private <L, A> Map<Integer, Set<PGTransition<L, A>>> getAllPGTransMapFromState(List<ProgramGraph<L, A>> pgs, Pair<List<L>, Map<String, Object>> fromState)
+    /**
+     * The transitions leaving one BFS level, and the states they reach first, with their labels.
+     */
+    private static final class ExpandedLevel<L, A> {
+        final List<List<Transition<Pair<List<L>, Map<String, Object>>, A>>> buffers;
+        final Set<A> actions;
+        final Map<Pair<List<L>, Map<String, Object>>, List<String>> newStates;
+
+        ExpandedLevel(List<List<Transition<Pair<List<L>, Map<String, Object>>, A>>> buffers, Set<A> actions,
+                      Map<Pair<List<L>, Map<String, Object>>, List<String>> newStates) {
+            this.buffers = buffers;
+            this.actions = actions;
+            this.newStates = newStates;
+        }
+    }
+
+    private <L, A> ExpandedLevel<L, A> expandLevel(List<Pair<List<L>, Map<String, Object>>> level,
+                                                  ChannelSystemIndex<L, A> index, InterleavingActDef channelActionDef,
+                                                  ExplorationStore<L> store, PartialOrderReduction por,
+                                                  Set<Pair<List<L>, Map<String, Object>>> visited)
+    {
+        List<List<Transition<Pair<List<L>, Map<String, Object>>, A>>> buffers = level.parallelStream()
+                .map(fromState -> {
+                    List<Transition<Pair<List<L>, Map<String, Object>>, A>> buffer = new ArrayList<>();
+                    channelSystemSuccessors(fromState, index, channelActionDef, store, por, visited::contains, buffer);
+                    return buffer;
+                })
+                .collect(Collectors.toList());
+        Set<A> actions = buffers.parallelStream()
+                .flatMap(List::stream)
+                .map(Transition::getAction)
+                .collect(Collectors.toSet());
+        // claiming in the visited set decides which worker labels a state; the map keeps BFS order
+        Map<Pair<List<L>, Map<String, Object>>, List<String>> newStates = buffers.parallelStream()
+                .flatMap(List::stream)
+                .map(Transition::getTo)
+                .filter(visited::add)
+                .collect(Collectors.toMap(Function.identity(), this::channelSystemLabel, (a, b) -> a, LinkedHashMap::new));
+        return new ExpandedLevel<>(buffers, actions, newStates);
+    }
+
+    private <L> List<String> channelSystemLabel(Pair<List<L>, Map<String, Object>> state) {
+        List<String> label = new ArrayList<>();
+        for(L l: state.getFirst())
+            label.add(l.toString());
+        for(String var : state.second.keySet())
+            label.add(var + " = " + state.second.get(var).toString());
+        return label;
+    }
+
+    private <L, A> void addChannelSystemState(TransitionSystem<Pair<List<L>, Map<String, Object>>, A, String> ts,
+                                              Pair<List<L>, Map<String, Object>> state, List<String> label) {
+        ts.addState(state);
+        for(String ap : label)
+            ts.addAtomicProposition(ap);
+        addAllToLabel(ts, state, label);
+    }
+
+    /**
+     * Adds to {@code out} every transition leaving {@code fromState}: local moves of a single
+     * process, and handshakes between two processes over the same channel. With partial-order
+     * reduction, only an ample set is added when there is one.
+     */
+    private <L, A> void channelSystemSuccessors(Pair<List<L>, Map<String, Object>> fromState,
+                                                ChannelSystemIndex<L, A> index, InterleavingActDef channelActionDef,
+                                                ExplorationStore<L> store, PartialOrderReduction por, Predicate<Pair<List<L>, Map<String, Object>>> visited,
+                                                List<Transition<Pair<List<L>, Map<String, Object>>, A>> out)
     {
-        Map<Integer, Set<PGTransition<L, A>>> allPGTransMap = new HashMap<>();
-        for(int i = 0; i < pgs.size(); i++)
+        List<L> locs = fromState.getFirst();
+        if(por != null && ampleChannelSystemSuccessors(fromState, index, store, por, visited, out))
+            return;
+        for(int i = 0; i < index.processCount(); i++)
         {
-            ProgramGraph<L, A> currPG = pgs.get(i);
-            L locOfCurrPG = fromState.getFirst().get(i);
-            Set<PGTransition<L, A>> currPGTransitions = new HashSet<>();
-            for(PGTransition<L, A> pgTrans : currPG.getTransitions())
-                if(pgTrans.getFrom().equals(locOfCurrPG))
-                    currPGTransitions.add(pgTrans);
-
-            allPGTransMap.put(i, currPGTransitions);
+            ChannelSystemIndex.LocationTransitions<L, A> outgoing = index.outgoing(i, locs.get(i));
+            for(PGTransition<L, A> pgTrans : outgoing.local)
+            {
+                if(!index.isEnabled(pgTrans, fromState.second)) continue;
+                Map<String, Object> localEval = index.effect(pgTrans, fromState.second);
+                if(localEval == null) continue;
+                Pair<List<L>, Map<String, Object>> toState = store.state(ExplorationStore.moved(locs, i, pgTrans.getTo()), localEval);
+                out.add(new Transition<>(fromState, pgTrans.getAction(), toState));
+            }
+
+            for(int k = 0; k < outgoing.oneSided.size(); k++)
+            {
+                PGTransition<L, A> pgTrans = outgoing.oneSided.get(k);
+                if(!index.isEnabled(pgTrans, fromState.second)) continue;
+                String currAction = pgTrans.getAction().toString();
+                String channel = outgoing.oneSidedChannels.get(k);
+                // each handshake is produced once, from the process with the lower index
+                for(int pgNum = i + 1; pgNum < index.processCount(); pgNum++)
+                {
+                    for(PGTransition<L, A> otherPGTrans : index.outgoing(pgNum, locs.get(pgNum)).partnersOf(pgTrans, channel))
+                    {
+                        if(!index.isEnabled(otherPGTrans, fromState.second)) continue;
+                        // channel systems name handshakes by their joined action strings
+                        @SuppressWarnings("unchecked")
+                        A newAction = (A) (currAction + "|" + otherPGTrans.getAction().toString());
+                        Map<String, Object> syncEval = channelActionDef.effect(fromState.second, newAction);
+                        if(syncEval == null) continue;
+                        List<L> locsForNewState = ExplorationStore.moved(locs, i, pgTrans.getTo(), pgNum, otherPGTrans.getTo());
+                        Pair<List<L>, Map<String, Object>> toState = store.state(locsForNewState, syncEval);
+                        out.add(new Transition<>(fromState, newAction, toState));
+                    }
+                }
+            }
         }
-        return allPGTransMap;
     }
 
-    private String getQueueNameFromOneSidedAction(String oneSidedAction)
+    /**
+     * Adds to {@code out} the successors of {@code fromState} through an ample set: the enabled
+     * local transitions of one process that {@code por} allows and that reach no visited state
+     * (the cycle proviso). Returns false, adding nothing, if no process qualifies.
+     */
+    private <L, A> boolean ampleChannelSystemSuccessors(Pair<List<L>, Map<String, Object>> fromState,
+                                                        ChannelSystemIndex<L, A> index, ExplorationStore<L> store, PartialOrderReduction por,
+                                                        Predicate<Pair<List<L>, Map<String, Object>>> visited,
+                                                        List<Transition<Pair<List<L>, Map<String, Object>>, A>> out)
     {
-        int breakIndex = 0;
-        for(int i = 0; i < oneSidedAction.length(); i++)
+        List<L> locs = fromState.getFirst();
+        for(int i = 0; i < index.processCount(); i++)
         {
-            if(oneSidedAction.charAt(i) == '!' || oneSidedAction.charAt(i) == '?')
-                breakIndex = i;
+            if(!por.canReduce(i, locs.get(i))) continue;
+            List<Transition<Pair<List<L>, Map<String, Object>>, A>> ample = new ArrayList<>();
+            boolean closesCycle = false;
+            for(PGTransition<L, A> pgTrans : index.outgoing(i, locs.get(i)).local)
+            {
+                if(!index.isEnabled(pgTrans, fromState.second)) continue;
+                Map<String, Object> localEval = index.effect(pgTrans, fromState.second);
+                if(localEval == null) continue;
+                Pair<List<L>, Map<String, Object>> toState = store.state(ExplorationStore.moved(locs, i, pgTrans.getTo()), localEval);
+                if(visited.test(toState))
+                {
+                    closesCycle = true;
+                    break;
+                }
+                ample.add(new Transition<>(fromState, pgTrans.getAction(), toState));
+            }
+            if(closesCycle || ample.isEmpty()) continue;
+            out.addAll(ample);
+            return true;
         }
-        return oneSidedAction.substring(0, breakIndex);
+        return false;
     }
 
     @Override
     public <Sts, Saut, A, P> TransitionSystem<Pair<Sts, Saut>, A, Saut> product(TransitionSystem<Sts, A, P> ts, Automaton<Saut, P> aut) {
         TransitionSystem<Pair<Sts, Saut>, A, Saut> newTS = createTransitionSystem();
+        ProductGraph<Sts, A, P, Saut> productGraph = new ProductGraph<>(indexed(ts), aut);
 
-        Map<Sts, Set<P>> labels = ts.getLabelingFunction();
-        for(Sts tsState : ts.getInitialStates()) {
-            Set<P> label = labels.get(tsState) != null ? labels.get(tsState) : new HashSet();
-            for(Saut autState: aut.getInitialStates())
-                for(Saut toState : aut.nextStates(autState,label)) {
-                    Pair<Sts, Saut> newSts = new Pair<>(tsState, toState);
-                    newTS.addState(newSts);
-                    newTS.setInitial(newSts,true);
-                }
+        Deque<Pair<Sts, Saut>> states = new ArrayDeque<>();
+        for(Pair<Sts, Saut> newSts : productGraph.initialStates()) {
+            addProductState(newTS, newSts, states);
+            newTS.setInitial(newSts, true);
         }
 
-        Deque<Pair<Sts, Saut>> states = new LinkedList<>(newTS.getInitialStates());
         while(!states.isEmpty())
         {
             Pair<Sts, Saut> state = states.removeFirst();
-            for(Transition<Sts, A> tsTr : ts.getTransitions())
-            {
-                if(tsTr.getFrom().equals(state.getFirst()))
-                {
-                    A action = tsTr.getAction();
-                    Sts tsToState = tsTr.getTo();
-                    Set<P> labelTsToState =  labels.get(tsToState) != null ? labels.get(tsToState) : new HashSet();
-                    Saut autFromState = state.getSecond();
-
-                    Set<Saut> nextStates = aut.nextStates(autFromState,labelTsToState);
-                    if(nextStates != null) {
-                        for(Saut autToState : nextStates) {
-                            Pair<Sts, Saut> newState = new Pair<>(tsToState, autToState);
-                            if(!newTS.getStates().contains(newState))
-                                states.addLast(newState);
-                            newTS.addState(newState);
-                            newTS.addAction(action);
-                            newTS.addTransition(new Transition<>(state, action , newState));
-                        }
-                    }
-                }
-            }
-        }
-
-        for(Pair<Sts, Saut> state : newTS.getStates())
-        {
-            Saut label = state.getSecond();
-            newTS.addAtomicProposition(label);
-            newTS.addToLabel(state, label);
+            productGraph.forEachSuccessor(state, (action, newState) -> {
+                addProductState(newTS, newState, states);
+                newTS.addAction(action);
+                newTS.addTransition(new Transition<>(state, action, newState));
+            });
         }
         return newTS;
     }
 
+    private <Sts, Saut, A> void addProductState(TransitionSystem<Pair<Sts, Saut>, A, Saut> ts, Pair<Sts, Saut> state, Deque<Pair<Sts, Saut>> worklist) {
+        if(ts.getStates().contains(state)) return;
+        ts.addState(state);
+        ts.addAtomicProposition(state.getSecond());
+        ts.addToLabel(state, state.getSecond());
+        worklist.addLast(state);
+    }
+
     @Override
     public ProgramGraph<String, String> programGraphFromNanoPromela(String filename) throws Exception {
         StmtContext stmt = pareseNanoPromelaFile(filename);
@@ -769,25 +1003,19 @@ public class FvmFacadeImpl implements FvmFacade {
 
     @Override
     public <S, A, P, Saut> VerificationResult<S> verifyAnOmegaRegularProperty(TransitionSystem<S, A, P> ts, Automaton<Saut, P> aut) {
-        TransitionSystem<Pair<S, Saut>, A, Saut> productTS = product(ts, aut);
-        for(Pair<S, Saut> prodState : productTS.getStates())
-        {
-            if(aut.getAcceptingStates().contains(prodState.getSecond()))
-            {
-                List<S> cycle = getPathBetweenStates(productTS, prodState, prodState, new HashSet<>(), new LinkedList<>());
-                if(cycle == null) continue;
-                for(Pair<S, Saut> initState : productTS.getInitialStates())
-                {
-                    List<S> prefix = getPathBetweenStates(productTS, initState, prodState, new HashSet<>(), new LinkedList<>());
-                    if(prefix == null) continue;
-                    VerificationFailed<S> ans = new VerificationFailed<>();
-                    ans.setCycle(cycle);
-                    ans.setPrefix(prefix);
-                    return ans;
-                }
-            }
-        }
-        return new VerificationSucceeded<>();
+        return verifyAnOmegaRegularProperty(ts, aut, new ExplorationOptions());
+    }
+
+    /**
+     * As {@link #verifyAnOmegaRegularProperty(TransitionSystem, Automaton)}; with a pool
+     * in {@code options}, runs a parallel nested depth-first search (CNDFS) on it. Counterexamples
+     * are shortened within the states the search explored, as bounded by {@code options}.
+     */
+    public <S, A, P, Saut> VerificationResult<S> verifyAnOmegaRegularProperty(TransitionSystem<S, A, P> ts, Automaton<Saut, P> aut, ExplorationOptions options) {
+        ProductGraph<S, A, P, Saut> productGraph = new ProductGraph<>(indexed(ts), aut);
+        if(options.getPool() == null)
+            return new NestedDepthFirstSearch<>(productGraph, options.getCounterexampleBudget()).run();
+        return NestedDepthFirstSearch.parallel(productGraph, options.getCounterexampleBudget(), options.getPool());
     }
 
     @Override
@@ -803,26 +1031,20 @@ public class FvmFacadeImpl implements FvmFacade {
 
     //Helper functions
 
-    private <S,A,P> void removeUnreachableStates(TransitionSystem<S,A,P> ts, Set<S> states){
-        Set<S> reach = reach(ts);
-        for(S state:states){
-            if(!reach.contains(state)){
-                Set<Transition<S,A>> transitions = ts.getTransitions();
-                Set<Transition<S,A>> transitionsToRemove = new HashSet<>();
-                for(Transition<S,A> tr: transitions){
-                    if(tr.getFrom().equals(state) || tr.getTo().equals(state))
-                        transitionsToRemove.add(tr);
-                }
-                for(Transition<S,A> tr: transitionsToRemove)
-                    ts.removeTransition(tr);
-
-                Set<P> labels = new HashSet<>(ts.getLabel(state));
-                for(P label:labels){
-                    ts.removeLabel(state, label);
-                }
-                ts.removeState(state);
-            }
+    // our own systems intern the whole label once, instead of one label per prefix of it
+    private <S, A, P> void addAllToLabel(TransitionSystem<S, A, P> ts, S state, Collection<? extends P> aps) {
+        if(ts instanceof TransitionSystemImpl){
+            ((TransitionSystemImpl<S, A, P>) ts).addAllToLabel(state, aps);
+            return;
         }
+        for(P ap: aps)
+            ts.addToLabel(state, ap);
+    }
+
+    private <S, A, P> IndexedTransitionSystem<S, A, P> indexed(TransitionSystem<S, A, P> ts) {
+        if(ts instanceof IndexedTransitionSystem)
+            return (IndexedTransitionSystem<S, A, P>) ts;
+        return FrozenTransitionSystem.of(ts);
     }
 
     private ProgramGraph<String, String> buildProgramGraph(StmtContext stmt)
@@ -1016,29 +1238,4 @@ public class FvmFacadeImpl implements FvmFacade {
 
         return res;
     }
-
-    private <S, A, Saut> List<S> getPathBetweenStates(TransitionSystem<Pair<S, Saut>, A, Saut> productTS, Pair<S, Saut> from,
-                                                      Pair<S, Saut> to, Set<Pair<S, Saut>> checkedStates, List<S> path)
-    {
-        path.add(from.getFirst());
-        for(Transition<Pair<S, Saut>, A> tr : productTS.getTransitions())
-        {
-            if(tr.getFrom().equals(from))
-            {
-                Pair<S, Saut> nextState = tr.getTo();
-                if(nextState.equals(to))
-                    return path;
-
-                if(!checkedStates.contains(nextState))
-                {
-                    checkedStates.add(nextState);
-                    List<S> tmpAns = getPathBetweenStates(productTS, nextState, to, checkedStates, path);
-                    if(tmpAns != null)
-                        return tmpAns;
-                }
-            }
-        }
-        path.remove(from.getFirst());
-        return null;
-    }
 }
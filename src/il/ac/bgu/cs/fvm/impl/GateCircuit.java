@@ -0,0 +1,320 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.circuits.Circuit;
+
+import java.util.*;
+
+/**
+ * A circuit given as a netlist of boolean gates over its input and register names: one
+ * gate for the next value of each register and one for each output. Registers start off.
+ * <p>
+ * The same gates evaluate as a plain {@link Circuit}, 64 lanes at a time as a
+ * {@link BitSlicedCircuit}, and as BDDs as a {@link SymbolicCircuit}, so
+ * {@link SymbolicCircuitChecker} builds its transition relation from the gates instead of
+ * enumerating input and register values.
+ */
+public class GateCircuit implements SymbolicCircuit, BitSlicedCircuit {
+
+    /**
+     * A boolean function of the input and register signals.
+     */
+    public abstract static class Gate {
+        abstract <T> T evaluate(Algebra<T> algebra);
+    }
+
+    // what a gate is evaluated over: booleans, 64-lane words or BDDs
+    private interface Algebra<T> {
+        T signal(String name);
+
+        T constant(boolean value);
+
+        T not(T a);
+
+        T and(T a, T b);
+
+        T or(T a, T b);
+
+        T xor(T a, T b);
+    }
+
+    private final Set<String> inputs = new LinkedHashSet<>();
+    private final Map<String, Gate> registers = new LinkedHashMap<>();
+    private final Map<String, Gate> outputs = new LinkedHashMap<>();
+
+    public GateCircuit input(String name) {
+        inputs.add(name);
+        return this;
+    }
+
+    /**
+     * Adds a register whose value in the next step is {@code next}.
+     */
+    public GateCircuit register(String name, Gate next) {
+        registers.put(name, next);
+        return this;
+    }
+
+    public GateCircuit output(String name, Gate value) {
+        outputs.put(name, value);
+        return this;
+    }
+
+    public static Gate signal(String name) {
+        return new Gate() {
+            @Override
+            <T> T evaluate(Algebra<T> algebra) {
+                return algebra.signal(name);
+            }
+        };
+    }
+
+    public static Gate constant(boolean value) {
+        return new Gate() {
+            @Override
+            <T> T evaluate(Algebra<T> algebra) {
+                return algebra.constant(value);
+            }
+        };
+    }
+
+    public static Gate not(Gate a) {
+        return new Gate() {
+            @Override
+            <T> T evaluate(Algebra<T> algebra) {
+                return algebra.not(a.evaluate(algebra));
+            }
+        };
+    }
+
+    public static Gate and(Gate a, Gate b) {
+        return new Gate() {
+            @Override
+            <T> T evaluate(Algebra<T> algebra) {
+                return algebra.and(a.evaluate(algebra), b.evaluate(algebra));
+            }
+        };
+    }
+
+    public static Gate or(Gate a, Gate b) {
+        return new Gate() {
+            @Override
+            <T> T evaluate(Algebra<T> algebra) {
+                return algebra.or(a.evaluate(algebra), b.evaluate(algebra));
+            }
+        };
+    }
+
+    public static Gate xor(Gate a, Gate b) {
+        return new Gate() {
+            @Override
+            <T> T evaluate(Algebra<T> algebra) {
+                return algebra.xor(a.evaluate(algebra), b.evaluate(algebra));
+            }
+        };
+    }
+
+    @Override
+    public Set<String> getInputPortNames() {
+        return Collections.unmodifiableSet(inputs);
+    }
+
+    @Override
+    public Set<String> getRegisterNames() {
+        return Collections.unmodifiableSet(registers.keySet());
+    }
+
+    @Override
+    public Set<String> getOutputPortNames() {
+        return Collections.unmodifiableSet(outputs.keySet());
+    }
+
+    @Override
+    public Map<String, Boolean> updateRegisters(Map<String, Boolean> inputs, Map<String, Boolean> registers) {
+        return evaluate(this.registers, new BooleanAlgebra(inputs, registers));
+    }
+
+    @Override
+    public Map<String, Boolean> computeOutputs(Map<String, Boolean> inputs, Map<String, Boolean> registers) {
+        return evaluate(outputs, new BooleanAlgebra(inputs, registers));
+    }
+
+    private static Map<String, Boolean> evaluate(Map<String, Gate> gates, BooleanAlgebra algebra) {
+        Map<String, Boolean> res = new HashMap<>();
+        for(Map.Entry<String, Gate> e: gates.entrySet())
+            res.put(e.getKey(), e.getValue().evaluate(algebra));
+        return res;
+    }
+
+    @Override
+    public void evaluate(long[] inputs, long[] registers, long[] nextRegisters, long[] outputs) {
+        Map<String, Long> words = new HashMap<>();
+        int i = 0;
+        for(String name: this.inputs)
+            words.put(name, inputs[i++]);
+        i = 0;
+        for(String name: this.registers.keySet())
+            words.put(name, registers[i++]);
+        WordAlgebra algebra = new WordAlgebra(words);
+        i = 0;
+        for(Gate gate: this.registers.values())
+            nextRegisters[i++] = gate.evaluate(algebra);
+        i = 0;
+        for(Gate gate: this.outputs.values())
+            outputs[i++] = gate.evaluate(algebra);
+    }
+
+    @Override
+    public int nextRegister(String register, BddManager bdd, Map<String, Integer> variables) {
+        return bdd(registers.get(register), bdd, variables);
+    }
+
+    @Override
+    public int output(String output, BddManager bdd, Map<String, Integer> variables) {
+        return bdd(outputs.get(output), bdd, variables);
+    }
+
+    private static int bdd(Gate gate, BddManager bdd, Map<String, Integer> variables) {
+        int res = gate.evaluate(new BddAlgebra(bdd, variables));
+        bdd.deref(res);
+        return res;
+    }
+
+    private static Boolean lookup(String name, Map<String, Boolean> inputs, Map<String, Boolean> registers) {
+        Boolean res = inputs.get(name);
+        if(res == null) res = registers.get(name);
+        if(res == null) throw new IllegalArgumentException("No input or register named " + name);
+        return res;
+    }
+
+    private static final class BooleanAlgebra implements Algebra<Boolean> {
+        private final Map<String, Boolean> inputs;
+        private final Map<String, Boolean> registers;
+
+        BooleanAlgebra(Map<String, Boolean> inputs, Map<String, Boolean> registers) {
+            this.inputs = inputs;
+            this.registers = registers;
+        }
+
+        @Override
+        public Boolean signal(String name) {
+            return lookup(name, inputs, registers);
+        }
+
+        @Override
+        public Boolean constant(boolean value) {
+            return value;
+        }
+
+        @Override
+        public Boolean not(Boolean a) {
+            return !a;
+        }
+
+        @Override
+        public Boolean and(Boolean a, Boolean b) {
+            return a && b;
+        }
+
+        @Override
+        public Boolean or(Boolean a, Boolean b) {
+            return a || b;
+        }
+
+        @Override
+        public Boolean xor(Boolean a, Boolean b) {
+            return a ^ b;
+        }
+    }
+
+    private static final class WordAlgebra implements Algebra<Long> {
+        private final Map<String, Long> words;
+
+        WordAlgebra(Map<String, Long> words) {
+            this.words = words;
+        }
+
+        @Override
+        public Long signal(String name) {
+            Long res = words.get(name);
+            if(res == null) throw new IllegalArgumentException("No input or register named " + name);
+            return res;
+        }
+
+        @Override
+        public Long constant(boolean value) {
+            return value ? -1L : 0L;
+        }
+
+        @Override
+        public Long not(Long a) {
+            return ~a;
+        }
+
+        @Override
+        public Long and(Long a, Long b) {
+            return a & b;
+        }
+
+        @Override
+        public Long or(Long a, Long b) {
+            return a | b;
+        }
+
+        @Override
+        public Long xor(Long a, Long b) {
+            return a ^ b;
+        }
+    }
+
+    // every value it returns holds one reference, released once the value is combined
+    private static final class BddAlgebra implements Algebra<Integer> {
+        private final BddManager bdd;
+        private final Map<String, Integer> variables;
+
+        BddAlgebra(BddManager bdd, Map<String, Integer> variables) {
+            this.bdd = bdd;
+            this.variables = variables;
+        }
+
+        @Override
+        public Integer signal(String name) {
+            Integer res = variables.get(name);
+            if(res == null) throw new IllegalArgumentException("No input or register named " + name);
+            return bdd.ref(res);
+        }
+
+        @Override
+        public Integer constant(boolean value) {
+            return value ? BddManager.TRUE : BddManager.FALSE;
+        }
+
+        @Override
+        public Integer not(Integer a) {
+            int res = bdd.ref(bdd.not(a));
+            bdd.deref(a);
+            return res;
+        }
+
+        @Override
+        public Integer and(Integer a, Integer b) {
+            return combine(bdd.and(a, b), a, b);
+        }
+
+        @Override
+        public Integer or(Integer a, Integer b) {
+            return combine(bdd.or(a, b), a, b);
+        }
+
+        @Override
+        public Integer xor(Integer a, Integer b) {
+            return combine(bdd.xor(a, b), a, b);
+        }
+
+        private int combine(int res, int a, int b) {
+            bdd.ref(res);
+            bdd.deref(a);
+            bdd.deref(b);
+            return res;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A transition system that can answer successor and predecessor queries
+ * without scanning all of its transitions. The facade uses these methods
+ * as fast paths whenever it is handed one of our own implementations.
+ */
+public interface IndexedTransitionSystem<STATE, ACTION, ATOMIC_PROPOSITION> extends TransitionSystem<STATE, ACTION, ATOMIC_PROPOSITION> {
+
+    Set<STATE> postStates(STATE s);
+
+    Set<STATE> postStates(STATE s, ACTION a);
+
+    Set<STATE> preStates(STATE s);
+
+    Set<STATE> preStates(STATE s, ACTION a);
+
+    /**
+     * The outgoing transitions of {@code s}, grouped by action. The returned map is read-only.
+     */
+    Map<ACTION, Set<STATE>> outgoing(STATE s);
+}
@@ -0,0 +1,322 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.programgraph.PGTransition;
+import il.ac.bgu.cs.fvm.programgraph.ProgramGraph;
+import il.ac.bgu.cs.fvm.util.Pair;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * The interleaving of several program graphs, computed on demand.
+ * A location is a tuple with one location per component (a {@link Pair} for
+ * two components, a {@link List} for the N-ary case). Outgoing transitions of a
+ * location are derived from the components when asked for, so location
+ * combinations that are never visited cost nothing. {@link #getLocations()} is a
+ * view; {@link #getTransitions()} is computed once, on first use.
+ * <p>
+ * The graph can still be edited through the {@link ProgramGraph} mutators. The
+ * first edit copies it into a {@link ProgramGraphImpl}, which then takes over.
+ */
+public class InterleavedProgramGraph<L, A> implements ProgramGraph<L, A> {
+
+    private final List<ProgramGraph<?, A>> components;
+    private final Function<Object[], L> compose;
+    private final Function<L, List<?>> decompose;
+    private final List<Map<Object, List<PGTransition<?, A>>>> outgoingIndex;
+    private String name;
+    private Set<List<String>> initializations;
+    private Set<PGTransition<L, A>> transitions;
+    private ProgramGraphImpl<L, A> materialized;
+    // the outgoing transitions of the materialized graph, kept up to date by the transition mutators
+    private Map<L, List<PGTransition<L, A>>> materializedOutgoing;
+
+    private InterleavedProgramGraph(List<ProgramGraph<?, A>> components, Function<Object[], L> compose, Function<L, List<?>> decompose) {
+        this.components = components;
+        this.compose = compose;
+        this.decompose = decompose;
+        this.outgoingIndex = new ArrayList<>(Collections.nCopies(components.size(), null));
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <L1, L2, A> InterleavedProgramGraph<Pair<L1, L2>, A> of(ProgramGraph<L1, A> pg1, ProgramGraph<L2, A> pg2) {
+        return new InterleavedProgramGraph<>(Arrays.asList(pg1, pg2),
+                parts -> new Pair<>((L1) parts[0], (L2) parts[1]),
+                loc -> Arrays.asList(loc.getFirst(), loc.getSecond()));
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <L, A> InterleavedProgramGraph<List<L>, A> of(List<? extends ProgramGraph<L, A>> pgs) {
+        return new InterleavedProgramGraph<>(new ArrayList<>(pgs),
+                parts -> (List<L>) Collections.unmodifiableList(Arrays.asList(parts)),
+                loc -> loc);
+    }
+
+    List<ProgramGraph<?, A>> components() {
+        return components;
+    }
+
+    /**
+     * The component locations of {@code location}, in component order.
+     */
+    List<?> parts(L location) {
+        return decompose.apply(location);
+    }
+
+    L location(Object[] parts) {
+        return compose.apply(parts);
+    }
+
+    /**
+     * The transitions leaving {@code location}: one per transition of a component
+     * leaving that component's location, with all other components unchanged.
+     */
+    public List<PGTransition<L, A>> outgoing(L location) {
+        if(materialized != null)
+            return new ArrayList<>(materializedOutgoing.getOrDefault(location, Collections.emptyList()));
+        List<?> parts = decompose.apply(location);
+        List<PGTransition<L, A>> res = new ArrayList<>();
+        for(int i = 0; i < components.size(); i++){
+            for(PGTransition<?, A> t: componentOutgoing(i, parts.get(i))){
+                Object[] next = parts.toArray();
+                next[i] = t.getTo();
+                res.add(new PGTransition<>(location, t.getCondition(), t.getAction(), compose.apply(next)));
+            }
+        }
+        return res;
+    }
+
+    /**
+     * The transitions of component {@code i} leaving its location {@code loc}.
+     */
+    List<PGTransition<?, A>> componentOutgoing(int i, Object loc) {
+        Map<Object, List<PGTransition<?, A>>> index = outgoingIndex.get(i);
+        if(index == null){
+            index = new HashMap<>();
+            for(PGTransition<?, A> t: components.get(i).getTransitions())
+                index.computeIfAbsent(t.getFrom(), k -> new ArrayList<>()).add(t);
+            outgoingIndex.set(i, index);
+        }
+        return index.getOrDefault(loc, Collections.emptyList());
+    }
+
+    /**
+     * All actions appearing on component transitions, without building the product transitions.
+     */
+    public Set<A> getActions() {
+        Set<A> res = new HashSet<>();
+        if(materialized != null){
+            for(PGTransition<L, A> t: materialized.getTransitions())
+                res.add(t.getAction());
+            return res;
+        }
+        for(ProgramGraph<?, A> pg: components)
+            for(PGTransition<?, A> t: pg.getTransitions())
+                res.add(t.getAction());
+        return res;
+    }
+
+    /**
+     * All guards appearing on component transitions, without building the product transitions.
+     */
+    public Set<String> getConditions() {
+        Set<String> res = new HashSet<>();
+        if(materialized != null){
+            for(PGTransition<L, A> t: materialized.getTransitions())
+                res.add(t.getCondition());
+            return res;
+        }
+        for(ProgramGraph<?, A> pg: components)
+            for(PGTransition<?, A> t: pg.getTransitions())
+                res.add(t.getCondition());
+        return res;
+    }
+
+    @Override
+    public Set<List<String>> getInitalizations() {
+        if(materialized != null) return materialized.getInitalizations();
+        if(initializations == null){
+            // every combination of one initialization per component, concatenated in component order
+            Set<List<String>> res = new HashSet<>();
+            res.add(new ArrayList<>());
+            for(ProgramGraph<?, A> pg: components){
+                Set<List<String>> next = new HashSet<>();
+                for(List<String> prefix: res)
+                    for(List<String> init: pg.getInitalizations()){
+                        List<String> newInit = new ArrayList<>(prefix);
+                        newInit.addAll(init);
+                        next.add(newInit);
+                    }
+                res = next;
+            }
+            initializations = res;
+        }
+        return initializations;
+    }
+
+    @Override
+    public Set<L> getInitialLocations() {
+        if(materialized != null) return materialized.getInitialLocations();
+        List<Set<?>> sets = new ArrayList<>();
+        for(ProgramGraph<?, A> pg: components)
+            sets.add(pg.getInitialLocations());
+        return new Product(sets);
+    }
+
+    @Override
+    public Set<L> getLocations() {
+        if(materialized != null) return materialized.getLocations();
+        List<Set<?>> sets = new ArrayList<>();
+        for(ProgramGraph<?, A> pg: components)
+            sets.add(pg.getLocations());
+        return new Product(sets);
+    }
+
+    @Override
+    public Set<PGTransition<L, A>> getTransitions() {
+        if(materialized != null) return materialized.getTransitions();
+        if(transitions == null){
+            Set<PGTransition<L, A>> res = new HashSet<>();
+            for(L location: getLocations())
+                res.addAll(outgoing(location));
+            transitions = Collections.unmodifiableSet(res);
+        }
+        return transitions;
+    }
+
+    @Override
+    public String getName() {
+        return materialized != null ? materialized.getName() : name;
+    }
+
+    @Override
+    public void setName(String name) {
+        if(materialized != null) materialized.setName(name);
+        else this.name = name;
+    }
+
+    @Override
+    public void addInitalization(List<String> init) {
+        materialize().addInitalization(init);
+    }
+
+    @Override
+    public void setInitial(L location, boolean isInitial) {
+        materialize().setInitial(location, isInitial);
+    }
+
+    @Override
+    public void addLocation(L l) {
+        materialize().addLocation(l);
+    }
+
+    @Override
+    public void addTransition(PGTransition<L, A> t) {
+        ProgramGraphImpl<L, A> pg = materialize();
+        if(pg.getTransitions().contains(t)) return;
+        pg.addTransition(t);
+        materializedOutgoing.computeIfAbsent(t.getFrom(), k -> new ArrayList<>()).add(t);
+    }
+
+    @Override
+    public void removeLocation(L l) {
+        materialize().removeLocation(l);
+    }
+
+    @Override
+    public void removeTransition(PGTransition<L, A> t) {
+        ProgramGraphImpl<L, A> pg = materialize();
+        if(!pg.getTransitions().contains(t)) return;
+        pg.removeTransition(t);
+        materializedOutgoing.get(t.getFrom()).remove(t);
+    }
+
+    private ProgramGraphImpl<L, A> materialize() {
+        if(materialized == null){
+            ProgramGraphImpl<L, A> pg = new ProgramGraphImpl<>();
+            pg.setName(name);
+            for(L l: getLocations())
+                pg.addLocation(l);
+            for(L l: getInitialLocations())
+                pg.setInitial(l, true);
+            for(List<String> init: getInitalizations())
+                pg.addInitalization(init);
+            Map<L, List<PGTransition<L, A>>> index = new HashMap<>();
+            for(PGTransition<L, A> t: getTransitions()){
+                pg.addTransition(t);
+                index.computeIfAbsent(t.getFrom(), k -> new ArrayList<>()).add(t);
+            }
+            materialized = pg;
+            materializedOutgoing = index;
+            transitions = null;
+            initializations = null;
+        }
+        return materialized;
+    }
+
+    /**
+     * Read-only view of the cartesian product of the given component sets, as composite locations.
+     */
+    private class Product extends AbstractSet<L> {
+        private final List<Set<?>> sets;
+
+        Product(List<Set<?>> sets) {
+            this.sets = sets;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean contains(Object o) {
+            if(o == null) return false;
+            List<?> parts;
+            try {
+                parts = decompose.apply((L) o);
+            }
+            catch (ClassCastException e){ return false; }
+            if(parts == null || parts.size() != sets.size()) return false;
+            for(int i = 0; i < sets.size(); i++)
+                if(!sets.get(i).contains(parts.get(i))) return false;
+            return true;
+        }
+
+        @Override
+        public int size() {
+            long size = 1;
+            for(Set<?> set: sets)
+                size *= set.size();
+            return (int) Math.min(size, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public Iterator<L> iterator() {
+            List<Object[]> values = new ArrayList<>();
+            for(Set<?> set: sets)
+                values.add(set.toArray());
+            return new Iterator<L>() {
+                final int[] idx = new int[values.size()];
+                boolean done = size() == 0;
+
+                @Override
+                public boolean hasNext() {
+                    return !done;
+                }
+
+                @Override
+                public L next() {
+                    if(done) throw new NoSuchElementException();
+                    Object[] parts = new Object[idx.length];
+                    for(int i = 0; i < idx.length; i++)
+                        parts[i] = values.get(i)[idx[i]];
+                    // advance the odometer, last component fastest
+                    int i = idx.length - 1;
+                    while(i >= 0 && ++idx[i] == values.get(i).length){
+                        idx[i] = 0;
+                        i--;
+                    }
+                    done = i < 0;
+                    return compose.apply(parts);
+                }
+            };
+        }
+    }
+}
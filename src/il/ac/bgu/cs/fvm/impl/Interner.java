@@ -0,0 +1,25 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hash-consing store: maps every value to one canonical instance equal to it.
+ * Exploration interns the components of its states (location vectors and valuations),
+ * so states with a common component share that object instead of holding copies,
+ * and memory grows with the number of distinct components rather than with states.
+ * Safe for concurrent use.
+ */
+final class Interner<T> {
+
+    private final Map<T, T> canonical = new ConcurrentHashMap<>();
+
+    T intern(T value) {
+        T existing = canonical.putIfAbsent(value, value);
+        return existing == null ? value : existing;
+    }
+
+    int size() {
+        return canonical.size();
+    }
+}
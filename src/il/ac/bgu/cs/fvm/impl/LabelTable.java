@@ -0,0 +1,161 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import java.util.*;
+
+/**
+ * Interns atomic propositions to dense ids and label sets to shared,
+ * immutable {@link LabelSet}s backed by a {@link BitSet} over those ids.
+ * Two states with the same label share the same {@code LabelSet} instance,
+ * so labels of the same table can be compared by reference. Interned sets are
+ * reference counted by their owner, and dropped once no state uses them.
+ */
+class LabelTable<P> {
+
+    private final List<P> aps = new ArrayList<>();
+    private final Map<P, Integer> ids = new HashMap<>();
+    private final Map<BitSet, LabelSet<P>> interned = new HashMap<>();
+    private final LabelSet<P> empty;
+
+    LabelTable() {
+        empty = intern(new BitSet());
+    }
+
+    int register(P ap) {
+        Integer id = ids.get(ap);
+        if(id != null) return id;
+        ids.put(ap, aps.size());
+        aps.add(ap);
+        return aps.size() - 1;
+    }
+
+    int idOf(Object ap) {
+        Integer id = ids.get(ap);
+        return id == null ? -1 : id;
+    }
+
+    P ap(int id) {
+        return aps.get(id);
+    }
+
+    LabelSet<P> empty() {
+        return empty;
+    }
+
+    LabelSet<P> with(LabelSet<P> label, P ap) {
+        int id = register(ap);
+        if(label.bits.get(id)) return label;
+        BitSet bits = (BitSet) label.bits.clone();
+        bits.set(id);
+        return intern(bits);
+    }
+
+    /**
+     * {@code label} with all of {@code aps} added, interning only the result.
+     */
+    LabelSet<P> withAll(LabelSet<P> label, Collection<? extends P> aps) {
+        BitSet bits = null;
+        for(P ap : aps){
+            int id = register(ap);
+            if(label.bits.get(id)) continue;
+            if(bits == null) bits = (BitSet) label.bits.clone();
+            bits.set(id);
+        }
+        return bits == null ? label : intern(bits);
+    }
+
+    LabelSet<P> without(LabelSet<P> label, Object ap) {
+        int id = idOf(ap);
+        if(id < 0 || !label.bits.get(id)) return label;
+        BitSet bits = (BitSet) label.bits.clone();
+        bits.clear(id);
+        return intern(bits);
+    }
+
+    /**
+     * Moves one reference from {@code from} to {@code to}; either may be null.
+     */
+    void replace(LabelSet<P> from, LabelSet<P> to) {
+        if(from == to) return;
+        if(to != null) to.references++;
+        if(from != null && --from.references == 0 && from != empty)
+            interned.remove(from.bits);
+    }
+
+    private LabelSet<P> intern(BitSet bits) {
+        LabelSet<P> label = interned.get(bits);
+        if(label == null){
+            label = new LabelSet<>(this, bits);
+            interned.put(bits, label);
+        }
+        return label;
+    }
+
+    /**
+     * An immutable set of atomic propositions, stored as a bitset over the ids of its table.
+     */
+    static final class LabelSet<P> extends AbstractSet<P> {
+        private final LabelTable<P> table;
+        private final BitSet bits;
+        private final int size;
+        private final int hash;
+        private int references;
+
+        private LabelSet(LabelTable<P> table, BitSet bits) {
+            this.table = table;
+            this.bits = bits;
+            this.size = bits.cardinality();
+            int h = 0;
+            for(int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1))
+                h += Objects.hashCode(table.ap(i));
+            this.hash = h;
+        }
+
+        BitSet bits() {
+            return bits;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            int id = table.idOf(o);
+            return id >= 0 && bits.get(id);
+        }
+
+        @Override
+        public Iterator<P> iterator() {
+            return new Iterator<P>() {
+                int next = bits.nextSetBit(0);
+
+                @Override
+                public boolean hasNext() {
+                    return next >= 0;
+                }
+
+                @Override
+                public P next() {
+                    if(next < 0) throw new NoSuchElementException();
+                    P ap = table.ap(next);
+                    next = bits.nextSetBit(next + 1);
+                    return ap;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(o == this) return true;
+            if(o instanceof LabelSet && ((LabelSet<?>) o).table == table)
+                return bits.equals(((LabelSet<?>) o).bits);
+            return super.equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
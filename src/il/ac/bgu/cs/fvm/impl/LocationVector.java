@@ -0,0 +1,62 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import java.util.*;
+
+/**
+ * An immutable list of locations, one per process, with a precomputed hash code.
+ * Equal to any other {@link List} with the same elements.
+ */
+final class LocationVector<L> extends AbstractList<L> implements RandomAccess {
+
+    private final Object[] locations;
+    private final int hash;
+
+    private LocationVector(Object[] locations) {
+        this.locations = locations;
+        this.hash = Arrays.hashCode(locations);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <L> LocationVector<L> of(List<? extends L> locations) {
+        if(locations instanceof LocationVector) return (LocationVector<L>) locations;
+        return new LocationVector<>(locations.toArray());
+    }
+
+    static <L> LocationVector<L> of(Object[] locations) {
+        return new LocationVector<>(locations.clone());
+    }
+
+    /**
+     * A copy of this vector with process {@code i} at {@code location}.
+     */
+    LocationVector<L> with(int i, L location) {
+        if(Objects.equals(locations[i], location)) return this;
+        Object[] res = locations.clone();
+        res[i] = location;
+        return new LocationVector<>(res);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public L get(int index) {
+        return (L) locations[index];
+    }
+
+    @Override
+    public int size() {
+        return locations.length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(o == this) return true;
+        if(o instanceof LocationVector)
+            return hash == ((LocationVector<?>) o).hash && Arrays.equals(locations, ((LocationVector<?>) o).locations);
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
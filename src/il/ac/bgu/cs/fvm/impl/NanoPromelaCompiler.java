@@ -0,0 +1,220 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.nanopromela.NanoPromelaFileReader;
+import il.ac.bgu.cs.fvm.nanopromela.NanoPromelaParser.StmtContext;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiles nano-promela guards and actions into closure trees, so each distinct
+ * string goes through the ANTLR parser once instead of on every evaluation.
+ * Compiled forms are kept in concurrent caches, so lookups from parallel explorations
+ * do not contend on a lock; a cache at its bound evicts one entry for each new string.
+ * <p>
+ * Only the plain fragment is compiled: integer arithmetic, comparisons, boolean
+ * connectives, {@code skip}, assignments and {@code atomic} blocks of assignments.
+ * Everything else (channel operations, unknown variables, non-integer values, ...)
+ * raises {@link Unsupported}, and the caller falls back to the parser-based definition.
+ */
+final class NanoPromelaCompiler {
+
+    private static final int CACHE_SIZE = 4096;
+
+    interface Condition {
+        boolean test(Map<String, Object> eval);
+    }
+
+    interface Effect {
+        Map<String, Object> apply(Map<String, Object> eval);
+    }
+
+    private interface IntExpr {
+        int eval(Map<String, Object> eval);
+    }
+
+    /**
+     * Thrown when a string, or one particular evaluation of it, is outside the compiled fragment.
+     */
+    static final class Unsupported extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final Unsupported UNSUPPORTED = new Unsupported();
+    private static final Condition UNSUPPORTED_CONDITION = eval -> { throw UNSUPPORTED; };
+    private static final Effect UNSUPPORTED_EFFECT = eval -> { throw UNSUPPORTED; };
+
+    private static final Map<String, Condition> conditions = new ConcurrentHashMap<>();
+    private static final Map<String, Effect> effects = new ConcurrentHashMap<>();
+
+    private NanoPromelaCompiler() {
+    }
+
+    static Condition condition(String text) {
+        Condition res = conditions.get(text);
+        if(res != null) return res;
+        if(conditions.size() >= CACHE_SIZE) evictOne(conditions);
+        return conditions.computeIfAbsent(text, NanoPromelaCompiler::compileCondition);
+    }
+
+    static Effect effect(String text) {
+        Effect res = effects.get(text);
+        if(res != null) return res;
+        if(effects.size() >= CACHE_SIZE) evictOne(effects);
+        return effects.computeIfAbsent(text, NanoPromelaCompiler::compileEffect);
+    }
+
+    private static void evictOne(Map<String, ?> cache) {
+        Iterator<String> it = cache.keySet().iterator();
+        if(it.hasNext()){
+            it.next();
+            it.remove();
+        }
+    }
+
+    private static Condition compileCondition(String text) {
+        if(text.trim().isEmpty()) return eval -> true;
+        try {
+            StmtContext stmt = NanoPromelaFileReader.pareseNanoPromelaString("if :: " + text + " -> skip fi");
+            ParseTree expr = stmt.ifstmt().option().get(0).boolexpr();
+            if(!sameText(expr, text)) return UNSUPPORTED_CONDITION;
+            return boolExpr(expr);
+        }
+        catch (RuntimeException e){ return UNSUPPORTED_CONDITION; }
+    }
+
+    private static Effect compileEffect(String text) {
+        if(text.trim().isEmpty()) return eval -> eval;
+        try {
+            StmtContext stmt = NanoPromelaFileReader.pareseNanoPromelaString(text);
+            if(!sameText(stmt, text)) return UNSUPPORTED_EFFECT;
+            if(stmt.skipstmt() != null) return eval -> eval;
+
+            List<String> vars = new ArrayList<>();
+            List<IntExpr> values = new ArrayList<>();
+            if(stmt.assstmt() != null)
+                assignment(stmt.assstmt(), vars, values);
+            else if(stmt.atomicstmt() != null){
+                ParseTree atomic = stmt.atomicstmt();
+                for(int i = 0; i < atomic.getChildCount(); i++)
+                    if(!(atomic.getChild(i) instanceof TerminalNode))
+                        assignment(atomic.getChild(i), vars, values);
+            }
+            else return UNSUPPORTED_EFFECT;
+
+            String[] names = vars.toArray(new String[0]);
+            IntExpr[] exprs = values.toArray(new IntExpr[0]);
+            return eval -> {
+                if(eval instanceof Valuation){
+                    Valuation res = (Valuation) eval;
+                    for(int i = 0; i < names.length; i++)
+                        res = res.with(names[i], exprs[i].eval(res));
+                    return res;
+                }
+                Map<String, Object> res = new HashMap<>(eval);
+                for(int i = 0; i < names.length; i++)
+                    res.put(names[i], exprs[i].eval(res));
+                return res;
+            };
+        }
+        catch (RuntimeException e){ return UNSUPPORTED_EFFECT; }
+    }
+
+    // the parser recovers from syntax errors silently, so make sure it consumed exactly our text
+    private static boolean sameText(ParseTree tree, String text) {
+        return tree != null && tree.getText().equals(text.replaceAll("\\s", ""));
+    }
+
+    private static void assignment(ParseTree t, List<String> vars, List<IntExpr> values) {
+        if(t.getChildCount() != 3 || !(t.getChild(0) instanceof TerminalNode) || !t.getChild(1).getText().equals(":="))
+            throw UNSUPPORTED;
+        vars.add(t.getChild(0).getText());
+        values.add(intExpr(t.getChild(2)));
+    }
+
+    private static Condition boolExpr(ParseTree t) {
+        int n = t.getChildCount();
+        if(t instanceof TerminalNode){
+            if(t.getText().equals("true")) return eval -> true;
+            if(t.getText().equals("false")) return eval -> false;
+            throw UNSUPPORTED;
+        }
+        if(n == 1) return boolExpr(t.getChild(0));
+        if(n == 2 && t.getChild(0).getText().equals("!")){
+            Condition c = boolExpr(t.getChild(1));
+            return eval -> !c.test(eval);
+        }
+        if(n == 3){
+            if(t.getChild(0).getText().equals("(") && t.getChild(2).getText().equals(")"))
+                return boolExpr(t.getChild(1));
+            String op = t.getChild(1).getText();
+            if(op.equals("&&") || op.equals("||")){
+                Condition l = boolExpr(t.getChild(0));
+                Condition r = boolExpr(t.getChild(2));
+                return op.equals("&&") ? eval -> l.test(eval) && r.test(eval) : eval -> l.test(eval) || r.test(eval);
+            }
+            IntExpr l = intExpr(t.getChild(0));
+            IntExpr r = intExpr(t.getChild(2));
+            switch (op) {
+                case "==": return eval -> l.eval(eval) == r.eval(eval);
+                case "!=": return eval -> l.eval(eval) != r.eval(eval);
+                case "<": return eval -> l.eval(eval) < r.eval(eval);
+                case "<=": return eval -> l.eval(eval) <= r.eval(eval);
+                case ">": return eval -> l.eval(eval) > r.eval(eval);
+                case ">=": return eval -> l.eval(eval) >= r.eval(eval);
+            }
+        }
+        throw UNSUPPORTED;
+    }
+
+    private static IntExpr intExpr(ParseTree t) {
+        int n = t.getChildCount();
+        if(t instanceof TerminalNode){
+            String text = t.getText();
+            if(text.matches("\\d+")){
+                int value = Integer.parseInt(text);
+                return eval -> value;
+            }
+            if(text.matches("[A-Za-z_]\\w*"))
+                return eval -> {
+                    Object value = eval.get(text);
+                    if(!(value instanceof Integer)) throw UNSUPPORTED;
+                    return (Integer) value;
+                };
+            throw UNSUPPORTED;
+        }
+        if(n == 1) return intExpr(t.getChild(0));
+        if(n == 2 && t.getChild(0).getText().equals("-")){
+            IntExpr e = intExpr(t.getChild(1));
+            return eval -> -e.eval(eval);
+        }
+        if(n == 3){
+            if(t.getChild(0).getText().equals("(") && t.getChild(2).getText().equals(")"))
+                return intExpr(t.getChild(1));
+            IntExpr l = intExpr(t.getChild(0));
+            IntExpr r = intExpr(t.getChild(2));
+            switch (t.getChild(1).getText()) {
+                case "+": return eval -> l.eval(eval) + r.eval(eval);
+                case "-": return eval -> l.eval(eval) - r.eval(eval);
+                case "*": return eval -> l.eval(eval) * r.eval(eval);
+                case "/": return eval -> {
+                    int d = r.eval(eval);
+                    if(d == 0) throw UNSUPPORTED;
+                    return l.eval(eval) / d;
+                };
+                case "%": return eval -> {
+                    int d = r.eval(eval);
+                    if(d == 0) throw UNSUPPORTED;
+                    return l.eval(eval) % d;
+                };
+            }
+        }
+        throw UNSUPPORTED;
+    }
+}
@@ -0,0 +1,306 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.util.Pair;
+import il.ac.bgu.cs.fvm.verification.VerificationFailed;
+import il.ac.bgu.cs.fvm.verification.VerificationResult;
+import il.ac.bgu.cs.fvm.verification.VerificationSucceeded;
+
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Buchi emptiness check by nested depth-first search, in the cyan-colour form of
+ * Schwoon and Esparza. The outer (blue) search explores the product on the fly and
+ * keeps the states of its path cyan; when it backtracks from an accepting state it
+ * starts an inner (red) search, which reports an accepting lasso as soon as it reaches
+ * a cyan state. Each state is visited at most once by each search, and the check stops
+ * at the first lasso it finds.
+ * <p>
+ * A counterexample is reported as the TS states of the blue path up to, not including,
+ * the accepting state, and of the cycle through it: the red path, then the blue path
+ * from the cyan state it reached, first shortened by {@link ShortestCounterexample}
+ * unless the budget is 0.
+ * <p>
+ * {@link #parallel} runs CNDFS (Evangelista, Laarman, Petrucci and van de Pol): one
+ * worker per thread, each with its own cyan and blue colours and its own random
+ * successor order, and a single red set shared by all of them. A red state is known to
+ * lie on no accepting cycle, so every worker skips the parts of the product another one
+ * has already cleared. Before a worker marks the states of its red search red it waits
+ * until the accepting ones among them that another worker is still searching from are
+ * red; this is what keeps the shared colour sound. A waiting worker parks through
+ * {@link ForkJoinPool#managedBlock}, so the pool can run another worker on its thread, and
+ * is woken whenever states turn red or the check stops. The first worker to finish
+ * answers for all of them.
+ */
+final class NestedDepthFirstSearch<S, Saut> {
+
+    private final ProductGraph<S, ?, ?, Saut> product;
+    private final Shared<S, Saut> shared;
+    private final Set<Pair<S, Saut>> red;
+    // this worker's colours: cyan states are on the blue path, visited ones are cyan or blue
+    private final Set<Pair<S, Saut>> visited = new HashSet<>();
+    private final Set<Pair<S, Saut>> cyan = new HashSet<>();
+    // the states of the current red search
+    private final Set<Pair<S, Saut>> pink = new HashSet<>();
+    // null for the deterministic order
+    private final Random random;
+    private final long counterexampleBudget;
+    // the search paths, one frame per state; kept on the heap so deep products cannot overflow the thread stack
+    private final Deque<Frame<S, Saut>> bluePath = new ArrayDeque<>();
+    private final Deque<Frame<S, Saut>> redPath = new ArrayDeque<>();
+    // the cyan state the red search closed the cycle at
+    private Pair<S, Saut> cycleEntry;
+
+    private static final class Frame<S, Saut> {
+        final Pair<S, Saut> state;
+        final Iterator<Pair<S, Saut>> successors;
+
+        Frame(Pair<S, Saut> state, Iterator<Pair<S, Saut>> successors) {
+            this.state = state;
+            this.successors = successors;
+        }
+    }
+
+    // what the workers of a parallel search share: the red states, and whether one of them has answered
+    private static final class Shared<S, Saut> {
+        final Set<Pair<S, Saut>> red;
+        private final AtomicBoolean stop = new AtomicBoolean();
+        // how many workers are parked in awaitRed
+        private final AtomicInteger waiting = new AtomicInteger();
+
+        Shared(Set<Pair<S, Saut>> red) {
+            this.red = red;
+        }
+
+        boolean stopped() {
+            return stop.get();
+        }
+
+        /**
+         * True for the one caller that stops the check.
+         */
+        boolean stop() {
+            if(!stop.compareAndSet(false, true)) return false;
+            wakeWaiters();
+            return true;
+        }
+
+        void paintRed(Collection<Pair<S, Saut>> states) {
+            red.addAll(states);
+            wakeWaiters();
+        }
+
+        /**
+         * Parks until {@code state} is red. False if the check was stopped meanwhile.
+         */
+        boolean awaitRed(Pair<S, Saut> state) {
+            ForkJoinPool.ManagedBlocker blocker = new ForkJoinPool.ManagedBlocker() {
+                @Override
+                public boolean isReleasable() {
+                    return stop.get() || red.contains(state);
+                }
+
+                @Override
+                public boolean block() throws InterruptedException {
+                    // a painter that reads waiting as 0 has already painted, so isReleasable sees its states
+                    waiting.incrementAndGet();
+                    try{
+                        synchronized(Shared.this){
+                            while(!isReleasable())
+                                Shared.this.wait();
+                        }
+                    } finally{
+                        waiting.decrementAndGet();
+                    }
+                    return true;
+                }
+            };
+            try{
+                ForkJoinPool.managedBlock(blocker);
+            } catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for another worker");
+            }
+            return !stop.get();
+        }
+
+        private void wakeWaiters() {
+            if(waiting.get() > 0)
+                synchronized(this){
+                    notifyAll();
+                }
+        }
+    }
+
+    /**
+     * @param counterexampleBudget how many product states {@link ShortestCounterexample} may
+     *                             visit to shorten a counterexample; 0 keeps the one found, and a
+     *                             negative budget allows enough for the states this worker explored
+     */
+    NestedDepthFirstSearch(ProductGraph<S, ?, ?, Saut> product, long counterexampleBudget) {
+        this(product, counterexampleBudget, new Shared<>(new HashSet<>()), null);
+    }
+
+    private NestedDepthFirstSearch(ProductGraph<S, ?, ?, Saut> product, long counterexampleBudget,
+                                   Shared<S, Saut> shared, Random random) {
+        this.product = product;
+        this.counterexampleBudget = counterexampleBudget;
+        this.shared = shared;
+        this.red = shared.red;
+        this.random = random;
+    }
+
+    /**
+     * Runs one CNDFS worker per worker of {@code pool}; the first uses the deterministic order.
+     */
+    static <S, Saut> VerificationResult<S> parallel(ProductGraph<S, ?, ?, Saut> product, long counterexampleBudget, ForkJoinPool pool) {
+        Shared<S, Saut> shared = new Shared<>(ConcurrentHashMap.newKeySet());
+        AtomicReference<VerificationResult<S>> result = new AtomicReference<>();
+        List<ForkJoinTask<?>> workers = new ArrayList<>();
+        for(int i = 0; i < pool.getParallelism(); i++){
+            Random random = i == 0 ? null : new Random(i);
+            workers.add(pool.submit(() -> {
+                try{
+                    VerificationResult<S> res = new NestedDepthFirstSearch<>(product, counterexampleBudget, shared, random).run();
+                    if(res != null)
+                        result.set(res);
+                } catch(RuntimeException | Error e){
+                    // release the workers waiting on this one's red search
+                    shared.stop();
+                    throw e;
+                }
+            }));
+        }
+        for(ForkJoinTask<?> worker : workers)
+            worker.join();
+        return result.get();
+    }
+
+    /**
+     * The answer, or null if another worker answered first.
+     */
+    VerificationResult<S> run() {
+        for(Pair<S, Saut> init : shuffled(product.initialStates())){
+            if(shared.stopped()) return null;
+            if(!visited.contains(init) && !red.contains(init) && dfsBlue(init))
+                return shared.stop() ? counterexample() : null;
+        }
+        return shared.stop() ? new VerificationSucceeded<>() : null;
+    }
+
+    private VerificationFailed<S> counterexample() {
+        Pair<S, Saut> seed = redPath.peekFirst().state;
+        long budget = counterexampleBudget < 0
+                ? ShortestCounterexample.PASSES * (long) (visited.size() + pink.size()) : counterexampleBudget;
+        if(budget > 0){
+            VerificationFailed<S> shortest = new ShortestCounterexample<>(product, this::explored, budget)
+                    .through(seed);
+            if(shortest != null) return shortest;
+        }
+        VerificationFailed<S> ans = new VerificationFailed<>();
+        List<S> prefix = tsStates(bluePath);
+        prefix.remove(prefix.size() - 1);
+        // the cycle closes through the blue path from the cyan state back to the seed
+        int entry = 0;
+        for(Frame<S, Saut> frame : bluePath){
+            if(frame.state.equals(cycleEntry)) break;
+            entry++;
+        }
+        List<S> cycle = tsStates(redPath);
+        cycle.addAll(prefix.subList(entry, prefix.size()));
+        ans.setPrefix(prefix);
+        ans.setCycle(cycle);
+        return ans;
+    }
+
+    private boolean dfsBlue(Pair<S, Saut> init) {
+        push(init);
+        while(!bluePath.isEmpty() && !shared.stopped()){
+            Frame<S, Saut> top = bluePath.peekLast();
+            if(top.successors.hasNext()){
+                Pair<S, Saut> next = top.successors.next();
+                if(!visited.contains(next) && !red.contains(next))
+                    push(next);
+                continue;
+            }
+            if(product.isAccepting(top.state)){
+                if(dfsRed(top.state))
+                    return true;
+                if(!awaitRed(top.state))
+                    return false;
+                shared.paintRed(pink);
+            }
+            cyan.remove(top.state);
+            bluePath.removeLast();
+        }
+        return false;
+    }
+
+    private void push(Pair<S, Saut> state) {
+        visited.add(state);
+        cyan.add(state);
+        bluePath.addLast(frame(state));
+    }
+
+    private boolean dfsRed(Pair<S, Saut> seed) {
+        pink.clear();
+        pink.add(seed);
+        redPath.addLast(frame(seed));
+        while(!redPath.isEmpty() && !shared.stopped()){
+            Frame<S, Saut> top = redPath.peekLast();
+            if(top.successors.hasNext()){
+                Pair<S, Saut> next = top.successors.next();
+                if(cyan.contains(next)){
+                    cycleEntry = next;
+                    return true;
+                }
+                if(!red.contains(next) && pink.add(next))
+                    redPath.addLast(frame(next));
+                continue;
+            }
+            redPath.removeLast();
+        }
+        return false;
+    }
+
+    /**
+     * Waits until the accepting states of the last red search, other than {@code seed},
+     * are red. Only another worker's search can still be holding them, so with one
+     * worker this never waits. False if the check was stopped meanwhile.
+     */
+    private boolean awaitRed(Pair<S, Saut> seed) {
+        for(Pair<S, Saut> state : pink){
+            if(state.equals(seed) || !product.isAccepting(state)) continue;
+            if(!red.contains(state) && !shared.awaitRed(state)) return false;
+        }
+        return true;
+    }
+
+    // the states this worker coloured, and those of its last red search, which hold the lasso it found
+    private boolean explored(Pair<S, Saut> state) {
+        return visited.contains(state) || pink.contains(state);
+    }
+
+    private Frame<S, Saut> frame(Pair<S, Saut> state) {
+        return new Frame<>(state, shuffled(product.successors(state)).iterator());
+    }
+
+    private List<Pair<S, Saut>> shuffled(List<Pair<S, Saut>> states) {
+        if(random != null)
+            Collections.shuffle(states, random);
+        return states;
+    }
+
+    private List<S> tsStates(Collection<Frame<S, Saut>> path) {
+        List<S> res = new ArrayList<>(path.size());
+        for(Frame<S, Saut> frame : path)
+            res.add(frame.state.getFirst());
+        return res;
+    }
+}
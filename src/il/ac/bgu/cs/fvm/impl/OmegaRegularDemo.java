@@ -0,0 +1,139 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.automata.Automaton;
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+import il.ac.bgu.cs.fvm.util.Pair;
+import il.ac.bgu.cs.fvm.verification.VerificationFailed;
+import il.ac.bgu.cs.fvm.verification.VerificationResult;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Cross-checks {@code verifyAnOmegaRegularProperty}, sequential and parallel, against the
+ * explicit {@code product} on random transition systems and automata: the property fails
+ * exactly when a reachable accepting product state lies on a cycle, and every reported
+ * lasso must be a path of the product through such a state.
+ */
+public class OmegaRegularDemo {
+
+    private static final List<Set<String>> LABELS = Arrays.asList(new HashSet<>(), new HashSet<>(Collections.singleton("p")),
+            new HashSet<>(Collections.singleton("q")), new HashSet<>(Arrays.asList("p", "q")));
+
+    public static void main(String[] args) {
+        FvmFacadeImpl fvm = new FvmFacadeImpl();
+        int products = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        ForkJoinPool pool = new ForkJoinPool(4);
+        int mismatches = 0;
+        int failures = 0;
+
+        System.out.println("Compare verdicts and lassos on " + products + " random products.");
+        for(int seed = 0; seed < products; seed++){
+            Random random = new Random(seed);
+            TransitionSystem<Integer, String, String> ts = randomTransitionSystem(fvm, random);
+            Automaton<Integer, String> aut = randomAutomaton(random);
+            TransitionSystem<Pair<Integer, Integer>, String, Integer> product = fvm.product(ts, aut);
+            boolean fails = hasAcceptingCycle(product, aut.getAcceptingStates());
+            List<VerificationResult<Integer>> results = Arrays.asList(fvm.verifyAnOmegaRegularProperty(ts, aut),
+                    fvm.verifyAnOmegaRegularProperty(ts, aut, new ExplorationOptions().parallel(pool)));
+            for(VerificationResult<Integer> res: results){
+                if(fails != res instanceof VerificationFailed
+                        || fails && !validLasso(product, aut.getAcceptingStates(), (VerificationFailed<Integer>) res)){
+                    System.out.println("\tproduct " + seed + ": explicit says " + (fails ? "fails" : "holds") + ", search " + res);
+                    mismatches++;
+                }
+            }
+            if(fails) failures++;
+        }
+        pool.shutdown();
+        System.out.println("\t" + mismatches + " mismatches, " + failures + " failing properties with valid lassos.");
+    }
+
+    private static <S> boolean hasAcceptingCycle(TransitionSystem<Pair<S, Integer>, String, Integer> product, Set<Integer> accepting) {
+        Map<Pair<S, Integer>, Set<Pair<S, Integer>>> successors = successors(product);
+        for(Pair<S, Integer> s: reachable(successors, product.getInitialStates()))
+            if(accepting.contains(s.getSecond()) && reachable(successors, successors.get(s)).contains(s)) return true;
+        return false;
+    }
+
+    // the lasso follows the product from an initial state to an accepting one, and from there back to it
+    private static <S> boolean validLasso(TransitionSystem<Pair<S, Integer>, String, Integer> product, Set<Integer> accepting, VerificationFailed<S> res) {
+        Map<Pair<S, Integer>, Set<Pair<S, Integer>>> successors = successors(product);
+        List<S> prefix = res.getPrefix(), cycle = res.getCycle();
+        if(cycle.isEmpty()) return false;
+        Set<Pair<S, Integer>> current = new HashSet<>();
+        for(Pair<S, Integer> init: product.getInitialStates())
+            if(init.getFirst().equals(prefix.isEmpty() ? cycle.get(0) : prefix.get(0))) current.add(init);
+        for(S s: prefix.subList(Math.min(1, prefix.size()), prefix.size()))
+            current = step(successors, current, s);
+        if(!prefix.isEmpty()) current = step(successors, current, null);
+        for(Pair<S, Integer> entry: current){
+            if(!accepting.contains(entry.getSecond()) || !entry.getFirst().equals(cycle.get(0))) continue;
+            Set<Pair<S, Integer>> around = Collections.singleton(entry);
+            for(S s: cycle.subList(1, cycle.size()))
+                around = step(successors, around, s);
+            if(step(successors, around, null).contains(entry)) return true;
+        }
+        return false;
+    }
+
+    // the successors of the states in from that are over the TS state to, or all of them if it is null
+    private static <S> Set<Pair<S, Integer>> step(Map<Pair<S, Integer>, Set<Pair<S, Integer>>> successors, Set<Pair<S, Integer>> from, S to) {
+        Set<Pair<S, Integer>> res = new HashSet<>();
+        for(Pair<S, Integer> s: from)
+            for(Pair<S, Integer> t: successors.getOrDefault(s, Collections.emptySet()))
+                if(to == null || t.getFirst().equals(to)) res.add(t);
+        return res;
+    }
+
+    private static <S> Map<Pair<S, Integer>, Set<Pair<S, Integer>>> successors(TransitionSystem<Pair<S, Integer>, String, Integer> product) {
+        Map<Pair<S, Integer>, Set<Pair<S, Integer>>> res = new HashMap<>();
+        for(Transition<Pair<S, Integer>, String> t: product.getTransitions())
+            res.computeIfAbsent(t.getFrom(), k -> new HashSet<>()).add(t.getTo());
+        return res;
+    }
+
+    private static <S> Set<Pair<S, Integer>> reachable(Map<Pair<S, Integer>, Set<Pair<S, Integer>>> successors, Collection<Pair<S, Integer>> from) {
+        Set<Pair<S, Integer>> res = new HashSet<>();
+        Deque<Pair<S, Integer>> pending = new ArrayDeque<>(from == null ? Collections.emptySet() : from);
+        while(!pending.isEmpty()){
+            Pair<S, Integer> s = pending.poll();
+            if(res.add(s)) pending.addAll(successors.getOrDefault(s, Collections.emptySet()));
+        }
+        return res;
+    }
+
+    private static TransitionSystem<Integer, String, String> randomTransitionSystem(FvmFacadeImpl fvm, Random random) {
+        TransitionSystem<Integer, String, String> ts = fvm.createTransitionSystem();
+        int states = 2 + random.nextInt(30), transitions = random.nextInt(80);
+        ts.addAtomicProposition("p");
+        ts.addAtomicProposition("q");
+        ts.addAction("a");
+        for(int s = 0; s < states; s++){
+            ts.addState(s);
+            for(String ap: LABELS.get(random.nextInt(LABELS.size())))
+                ts.addToLabel(s, ap);
+        }
+        ts.setInitial(0, true);
+        if(random.nextBoolean()) ts.setInitial(1, true);
+        for(int t = 0; t < transitions; t++)
+            ts.addTransition(new Transition<>(random.nextInt(states), "a", random.nextInt(states)));
+        return ts;
+    }
+
+    private static Automaton<Integer, String> randomAutomaton(Random random) {
+        Automaton<Integer, String> aut = new Automaton<>();
+        int states = 1 + random.nextInt(4);
+        for(int q = 0; q < states; q++)
+            aut.addState(q);
+        for(int q = 0; q < states; q++)
+            for(Set<String> label: LABELS)
+                for(int r = 0; r < states; r++)
+                    if(random.nextInt(3) == 0) aut.addTransition(q, label, r);
+        aut.setInitial(0);
+        aut.setAccepting(states - 1);
+        if(random.nextBoolean()) aut.setAccepting(0);
+        return aut;
+    }
+}
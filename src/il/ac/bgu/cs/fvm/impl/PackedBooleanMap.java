@@ -0,0 +1,133 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import java.util.*;
+
+/**
+ * An immutable {@code Map<String, Boolean>} over at most 64 names, stored as the bits of
+ * one {@code long}. Maps of the same {@link Layout} are compared by their bits; against any
+ * other map this is an ordinary read-only map with {@link HashMap}-compatible
+ * {@code equals}/{@code hashCode}. Entries are only materialized when iterated.
+ */
+final class PackedBooleanMap extends AbstractMap<String, Boolean> {
+
+    /**
+     * A fixed list of names; name {@code i} is stored in bit {@code i}.
+     */
+    static final class Layout {
+        private final String[] names;
+        private final Map<String, Integer> index = new HashMap<>();
+
+        Layout(Collection<String> names) {
+            if(names.size() > Long.SIZE)
+                throw new IllegalArgumentException("Cannot pack more than " + Long.SIZE + " names, got " + names.size());
+            this.names = names.toArray(new String[0]);
+            for(int i = 0; i < this.names.length; i++)
+                index.put(this.names[i], i);
+        }
+
+        int size() {
+            return names.length;
+        }
+
+        String name(int bit) {
+            return names[bit];
+        }
+
+        int bitOf(Object name) {
+            Integer bit = index.get(name);
+            return bit == null ? -1 : bit;
+        }
+
+        /**
+         * The bits of {@code map} over this layout. Names missing from {@code map} count as false.
+         */
+        long pack(Map<String, Boolean> map) {
+            if(map instanceof PackedBooleanMap && ((PackedBooleanMap) map).layout == this)
+                return ((PackedBooleanMap) map).bits;
+            long bits = 0;
+            for(int i = 0; i < names.length; i++)
+                if(Boolean.TRUE.equals(map.get(names[i]))) bits |= 1L << i;
+            return bits;
+        }
+    }
+
+    private final Layout layout;
+    private final long bits;
+    private final int hash;
+
+    PackedBooleanMap(Layout layout, long bits) {
+        this.layout = layout;
+        this.bits = bits;
+        int h = 0;
+        for(int i = 0; i < layout.size(); i++)
+            h += layout.name(i).hashCode() ^ Boolean.hashCode(get(i));
+        this.hash = h;
+    }
+
+    long bits() {
+        return bits;
+    }
+
+    boolean get(int bit) {
+        return (bits & (1L << bit)) != 0;
+    }
+
+    @Override
+    public Boolean get(Object key) {
+        int bit = layout.bitOf(key);
+        return bit < 0 ? null : get(bit);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return layout.bitOf(key) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return layout.size();
+    }
+
+    @Override
+    public Set<Entry<String, Boolean>> entrySet() {
+        return new AbstractSet<Entry<String, Boolean>>() {
+            @Override
+            public Iterator<Entry<String, Boolean>> iterator() {
+                return new Iterator<Entry<String, Boolean>>() {
+                    int next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < layout.size();
+                    }
+
+                    @Override
+                    public Entry<String, Boolean> next() {
+                        if(!hasNext()) throw new NoSuchElementException();
+                        Entry<String, Boolean> e = new SimpleImmutableEntry<>(layout.name(next), get(next));
+                        next++;
+                        return e;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return layout.size();
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(o == this) return true;
+        if(o instanceof PackedBooleanMap && ((PackedBooleanMap) o).layout == layout)
+            return bits == ((PackedBooleanMap) o).bits;
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,117 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.programgraph.PGTransition;
+import il.ac.bgu.cs.fvm.programgraph.ProgramGraph;
+
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Static part of the ample-set reduction over a set of concurrent processes.
+ * <p>
+ * The transitions of process {@code i} leaving location {@code l} may be used as an
+ * ample set when
+ * <ul>
+ * <li>none of them is a handshake (those always depend on another process);</li>
+ * <li>they are independent of every transition of every other process: no other process
+ * writes a variable they read or write, or reads a variable they write;</li>
+ * <li>they are invisible: they write no variable and leave no location that appears in
+ * the visible atomic propositions.</li>
+ * </ul>
+ * Read and write sets are taken from the nano-promela text of actions and conditions,
+ * so the analysis is only meaningful for nano-promela models. Non-emptiness and the cycle
+ * proviso depend on the exploration and are checked by the caller.
+ */
+final class PartialOrderReduction {
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_]\\w*");
+    private static final Pattern ASSIGNED = Pattern.compile("([A-Za-z_]\\w*)\\s*:=");
+    private static final Pattern CHANNEL = Pattern.compile("([A-Za-z_]\\w*)\\s*[?!]");
+    private static final Pattern RECEIVED = Pattern.compile("\\?\\s*([A-Za-z_]\\w*)");
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList(
+            "skip", "atomic", "if", "fi", "do", "od", "true", "false"));
+
+    private final List<Map<Object, Boolean>> reducible = new ArrayList<>();
+
+    /**
+     * @param processes       the processes, in exploration order
+     * @param visible         the atomic propositions the checked property may observe
+     * @param handshake       tells handshake actions apart from local ones
+     * @param locationLabels  {@code true} if each process location is an atomic proposition of its own,
+     *                        {@code false} if only the whole location tuple is
+     */
+    PartialOrderReduction(List<? extends ProgramGraph<?, ?>> processes, Set<String> visible,
+                          Predicate<String> handshake, boolean locationLabels) {
+        Set<String> visibleVariables = new HashSet<>();
+        Set<String> visibleLocations = new HashSet<>();
+        for(String ap: visible){
+            int eq = ap.indexOf(" = ");
+            if(eq >= 0) visibleVariables.add(ap.substring(0, eq));
+            else visibleLocations.add(ap);
+        }
+
+        List<Map<Object, List<PGTransition<?, ?>>>> byLocation = new ArrayList<>();
+        List<Set<String>> reads = new ArrayList<>();
+        List<Set<String>> writes = new ArrayList<>();
+        for(ProgramGraph<?, ?> pg: processes){
+            Map<Object, List<PGTransition<?, ?>>> out = new HashMap<>();
+            Set<String> r = new HashSet<>(), w = new HashSet<>();
+            for(PGTransition<?, ?> t: pg.getTransitions()){
+                out.computeIfAbsent(t.getFrom(), k -> new ArrayList<>()).add(t);
+                accesses(t, r, w);
+            }
+            byLocation.add(out);
+            reads.add(r);
+            writes.add(w);
+        }
+
+        for(int i = 0; i < processes.size(); i++){
+            Map<Object, Boolean> res = new HashMap<>();
+            for(Map.Entry<Object, List<PGTransition<?, ?>>> e: byLocation.get(i).entrySet()){
+                Object loc = e.getKey();
+                Set<String> r = new HashSet<>(), w = new HashSet<>();
+                boolean ok = true;
+                for(PGTransition<?, ?> t: e.getValue()){
+                    accesses(t, r, w);
+                    if(handshake.test(t.getAction().toString())) ok = false;
+                    if(!Objects.equals(t.getTo(), loc) && (locationLabels ?
+                            visibleLocations.contains(loc.toString()) || visibleLocations.contains(t.getTo().toString()) :
+                            !visibleLocations.isEmpty()))
+                        ok = false;
+                }
+                if(!Collections.disjoint(w, visibleVariables)) ok = false;
+                for(int j = 0; ok && j < processes.size(); j++){
+                    if(j == i) continue;
+                    ok = Collections.disjoint(writes.get(j), r) && Collections.disjoint(writes.get(j), w)
+                            && Collections.disjoint(reads.get(j), w);
+                }
+                res.put(loc, ok);
+            }
+            reducible.add(res);
+        }
+    }
+
+    /**
+     * Whether the transitions of {@code process} leaving {@code location} qualify as an ample set.
+     */
+    boolean canReduce(int process, Object location) {
+        return reducible.get(process).getOrDefault(location, false);
+    }
+
+    // conservative: every identifier counts as read, and channels count as both read and written
+    private static void accesses(PGTransition<?, ?> t, Set<String> reads, Set<String> writes) {
+        String action = t.getAction() == null ? "" : t.getAction().toString();
+        String condition = t.getCondition() == null ? "" : t.getCondition();
+        for(String text: Arrays.asList(action, condition)){
+            Matcher m = IDENTIFIER.matcher(text);
+            while(m.find())
+                if(!KEYWORDS.contains(m.group())) reads.add(m.group());
+        }
+        for(Pattern p: Arrays.asList(ASSIGNED, CHANNEL, RECEIVED)){
+            Matcher m = p.matcher(action);
+            while(m.find()) writes.add(m.group(1));
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.util.Pair;
+
+import java.util.*;
+
+/**
+ * Declares a group of interchangeable processes, for symmetry reduction.
+ * <p>
+ * Each symmetric process is given by its position in the location tuple, an id, the
+ * roles of its locations and its local variables. Corresponding local variables are listed
+ * in the same order for every process, and corresponding locations are mapped to the same
+ * role. For replicated processes that share location names the roles can be left out. An
+ * id variable is a shared variable whose value is the id of one of the processes (like the
+ * turn variable of Peterson's algorithm); it is renamed along with the processes.
+ * <p>
+ * Exploration then keeps one representative per orbit: the symmetric processes are
+ * sorted by role, local values and the id variables that point at them.
+ */
+public class ProcessSymmetry {
+
+    private final List<Integer> indices = new ArrayList<>();
+    private final List<Object> ids = new ArrayList<>();
+    private final List<Map<Object, Object>> roles = new ArrayList<>();
+    private final List<Map<Object, Object>> locationsByRole = new ArrayList<>();
+    private final List<List<String>> variables = new ArrayList<>();
+    private final SortedSet<String> idVariables = new TreeSet<>();
+
+    /**
+     * Adds a replicated process, whose locations are the same as those of the other symmetric processes.
+     */
+    public ProcessSymmetry process(int index, Object id, List<String> localVariables) {
+        return process(index, id, null, localVariables);
+    }
+
+    /**
+     * Adds a process whose location {@code l} plays the role {@code locationRoles.get(l)}.
+     */
+    public ProcessSymmetry process(int index, Object id, Map<?, ?> locationRoles, List<String> localVariables) {
+        if(!variables.isEmpty() && variables.get(0).size() != localVariables.size())
+            throw new IllegalArgumentException("Symmetric processes must have the same number of local variables");
+        Map<Object, Object> byRole = null;
+        if(locationRoles != null){
+            byRole = new HashMap<>();
+            for(Map.Entry<?, ?> e: locationRoles.entrySet())
+                if(byRole.put(e.getValue(), e.getKey()) != null)
+                    throw new IllegalArgumentException("Two locations of process " + index + " play the role " + e.getValue());
+        }
+        indices.add(index);
+        ids.add(id);
+        roles.add(locationRoles == null ? null : new HashMap<>(locationRoles));
+        locationsByRole.add(byRole);
+        variables.add(new ArrayList<>(localVariables));
+        return this;
+    }
+
+    public ProcessSymmetry idVariable(String name) {
+        idVariables.add(name);
+        return this;
+    }
+
+    /**
+     * The canonical representative of the state with component locations {@code parts} and
+     * valuation {@code eval}, or {@code null} if the state already is canonical.
+     */
+    Pair<Object[], Map<String, Object>> canonicalize(List<?> parts, Map<String, Object> eval) {
+        int n = indices.size();
+        List<List<Object>> signatures = new ArrayList<>();
+        for(int p = 0; p < n; p++)
+            signatures.add(signature(p, parts, eval));
+        Integer[] order = new Integer[n];
+        for(int p = 0; p < n; p++) order[p] = p;
+        Arrays.sort(order, (a, b) -> compareSignatures(signatures.get(a), signatures.get(b)));
+
+        // slot j receives process order[j]; position[p] is the slot process p moves to
+        int[] position = new int[n];
+        boolean identity = true;
+        for(int j = 0; j < n; j++){
+            position[order[j]] = j;
+            identity &= order[j] == j;
+        }
+        if(identity) return null;
+
+        Object[] newParts = parts.toArray();
+        Map<String, Object> newEval = new HashMap<>(eval);
+        for(int j = 0; j < n; j++){
+            int p = order[j];
+            newParts[indices.get(j)] = location(j, role(p, parts.get(indices.get(p))));
+            for(int m = 0; m < variables.get(j).size(); m++){
+                String from = variables.get(p).get(m), to = variables.get(j).get(m);
+                if(eval.containsKey(from)) newEval.put(to, eval.get(from));
+                else newEval.remove(to);
+            }
+        }
+        for(String name: idVariables){
+            int p = ids.indexOf(eval.get(name));
+            if(eval.containsKey(name) && p >= 0)
+                newEval.put(name, ids.get(position[p]));
+        }
+        return new Pair<>(newParts, newEval);
+    }
+
+    private List<Object> signature(int p, List<?> parts, Map<String, Object> eval) {
+        List<Object> res = new ArrayList<>();
+        res.add(role(p, parts.get(indices.get(p))));
+        for(String name: variables.get(p))
+            res.add(eval.get(name));
+        for(String name: idVariables)
+            res.add(eval.containsKey(name) && Objects.equals(eval.get(name), ids.get(p)));
+        return res;
+    }
+
+    private Object role(int p, Object location) {
+        Map<Object, Object> map = roles.get(p);
+        return map == null ? location : map.getOrDefault(location, location);
+    }
+
+    private Object location(int p, Object role) {
+        Map<Object, Object> map = locationsByRole.get(p);
+        return map == null ? role : map.getOrDefault(role, role);
+    }
+
+    private static int compareSignatures(List<Object> a, List<Object> b) {
+        for(int i = 0; i < a.size(); i++){
+            int c = compareValues(a.get(i), b.get(i));
+            if(c != 0) return c;
+        }
+        return 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compareValues(Object a, Object b) {
+        if(Objects.equals(a, b)) return 0;
+        if(a == null) return -1;
+        if(b == null) return 1;
+        if(a instanceof Comparable && a.getClass() == b.getClass())
+            return ((Comparable<Object>) a).compareTo(b);
+        int c = a.toString().compareTo(b.toString());
+        return c != 0 ? c : a.getClass().getName().compareTo(b.getClass().getName());
+    }
+}
@@ -0,0 +1,63 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.automata.Automaton;
+import il.ac.bgu.cs.fvm.util.Pair;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * The product of a transition system and an automaton, generated on demand.
+ * Product states are pairs {@code (s, q)}; {@code (s, q) -> (t, q')} whenever
+ * {@code s -a-> t} and {@code q'} is in {@code delta(q, L(t))}. Automaton steps are memoized per
+ * automaton state and label, and a missing step counts as no successors.
+ * Safe for concurrent searches as long as the TS and the automaton are not modified.
+ */
+final class ProductGraph<S, A, P, Saut> {
+
+    private final IndexedTransitionSystem<S, A, P> ts;
+    private final Map<S, Set<P>> labels;
+    private final Automaton<Saut, P> aut;
+    private final Map<Saut, Map<Set<P>, Set<Saut>>> nextStates = new ConcurrentHashMap<>();
+
+    ProductGraph(IndexedTransitionSystem<S, A, P> ts, Automaton<Saut, P> aut) {
+        this.ts = ts;
+        this.labels = ts.getLabelingFunction();
+        this.aut = aut;
+    }
+
+    List<Pair<S, Saut>> initialStates() {
+        List<Pair<S, Saut>> res = new ArrayList<>();
+        for(S s : ts.getInitialStates())
+            for(Saut q0 : aut.getInitialStates())
+                for(Saut q : next(q0, s))
+                    res.add(new Pair<>(s, q));
+        return res;
+    }
+
+    void forEachSuccessor(Pair<S, Saut> state, BiConsumer<A, Pair<S, Saut>> consumer) {
+        for(Map.Entry<A, Set<S>> e : ts.outgoing(state.getFirst()).entrySet())
+            for(S to : e.getValue())
+                for(Saut q : next(state.getSecond(), to))
+                    consumer.accept(e.getKey(), new Pair<>(to, q));
+    }
+
+    List<Pair<S, Saut>> successors(Pair<S, Saut> state) {
+        List<Pair<S, Saut>> res = new ArrayList<>();
+        forEachSuccessor(state, (a, to) -> res.add(to));
+        return res;
+    }
+
+    boolean isAccepting(Pair<S, Saut> state) {
+        return aut.getAcceptingStates().contains(state.getSecond());
+    }
+
+    private Set<Saut> next(Saut q, S s) {
+        Set<P> label = labels.get(s) != null ? labels.get(s) : Collections.emptySet();
+        return nextStates.computeIfAbsent(q, k -> new ConcurrentHashMap<>()).computeIfAbsent(label, l -> {
+            Set<Saut> res = aut.nextStates(q, l);
+            return res != null ? res : Collections.emptySet();
+        });
+    }
+}
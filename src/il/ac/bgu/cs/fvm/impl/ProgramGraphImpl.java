@@ -7,14 +7,18 @@ import java.util.*;
 
 public class ProgramGraphImpl<L, A> implements ProgramGraph<L, A> {
 
-    Map<L,Boolean> locations;
+    Set<L> locations;
+    Set<L> initial_locations;
+    Set<L> initial_locations_view;
     Set<PGTransition<L,A>> transitions;
     Set<List<String>> initializations;
     String name;
 
 
     public ProgramGraphImpl(){
-        locations=new HashMap<>();
+        locations = new HashSet<>();
+        initial_locations = new HashSet<>();
+        initial_locations_view = Collections.unmodifiableSet(initial_locations);
         transitions = new HashSet<>();
         initializations = new HashSet<>();
     }
@@ -27,12 +31,17 @@ public class ProgramGraphImpl<L, A> implements ProgramGraph<L, A> {
 
     @Override
     public void setInitial(L location, boolean isInitial) {
-        locations.replace(location, isInitial);
+        if(!locations.contains(location)) return;
+        if(isInitial)
+            initial_locations.add(location);
+        else
+            initial_locations.remove(location);
     }
 
     @Override
     public void addLocation(L l) {
-        locations.put(l, false);
+        locations.add(l);
+        initial_locations.remove(l);
     }
 
     @Override
@@ -47,17 +56,12 @@ public class ProgramGraphImpl<L, A> implements ProgramGraph<L, A> {
 
     @Override
     public Set<L> getInitialLocations() {
-        Set<L> initialLocs = new HashSet<>();
-        for (L location: locations.keySet()) {
-            if(locations.get(location))
-                initialLocs.add(location);
-        }
-        return initialLocs;
+        return initial_locations_view;
     }
 
     @Override
     public Set<L> getLocations() {
-        return locations.keySet();
+        return locations;
     }
 
     @Override
@@ -73,6 +77,7 @@ public class ProgramGraphImpl<L, A> implements ProgramGraph<L, A> {
     @Override
     public void removeLocation(L l) {
         locations.remove(l);
+        initial_locations.remove(l);
     }
 
     @Override
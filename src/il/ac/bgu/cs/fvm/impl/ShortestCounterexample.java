@@ -0,0 +1,141 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.util.Pair;
+import il.ac.bgu.cs.fvm.verification.VerificationFailed;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Shortens a counterexample found by {@link NestedDepthFirstSearch}. Given an accepting
+ * state on a cycle, it computes that state's strongly connected component from indexed
+ * successor and predecessor lists, finds a prefix from an initial state to the nearest
+ * accepting state of the component, and a cycle back to it, each shortest within the
+ * explored states.
+ * <p>
+ * The searches stay inside the states the nested search has already explored, so they
+ * never generate product states it did not; a shorter lasso through states it skipped
+ * is not found. Every state they discover counts against a budget; when it runs out the
+ * caller keeps the counterexample it already has.
+ */
+final class ShortestCounterexample<S, Saut> {
+
+    /**
+     * How many searches {@link #through} runs; each discovers an explored state at most once,
+     * so this many times the explored states is always enough budget.
+     */
+    static final int PASSES = 3;
+
+    private final ProductGraph<S, ?, ?, Saut> product;
+    private final Predicate<Pair<S, Saut>> explored;
+    private long budget;
+
+    ShortestCounterexample(ProductGraph<S, ?, ?, Saut> product, Predicate<Pair<S, Saut>> explored, long budget) {
+        this.product = product;
+        this.explored = explored;
+        this.budget = budget;
+    }
+
+    /**
+     * A shortest lasso through the component of {@code seed}, or null if the budget ran out.
+     */
+    VerificationFailed<S> through(Pair<S, Saut> seed) {
+        Set<Pair<S, Saut>> component = component(seed);
+        if(component == null) return null;
+
+        Map<Pair<S, Saut>, Pair<S, Saut>> parent = new HashMap<>();
+        Pair<S, Saut> entry = nearestAccepting(component, parent);
+        if(entry == null) return null;
+        List<S> prefix = path(parent, parent.get(entry));
+
+        parent.clear();
+        Pair<S, Saut> last = lastBeforeReturn(entry, component, parent);
+        if(last == null) return null;
+        List<S> cycle = path(parent, last);
+
+        VerificationFailed<S> ans = new VerificationFailed<>();
+        ans.setPrefix(prefix);
+        ans.setCycle(cycle);
+        return ans;
+    }
+
+    // the states reachable from seed that can also reach it back
+    private Set<Pair<S, Saut>> component(Pair<S, Saut> seed) {
+        Map<Pair<S, Saut>, List<Pair<S, Saut>>> predecessors = new HashMap<>();
+        predecessors.put(seed, new ArrayList<>());
+        Deque<Pair<S, Saut>> queue = new ArrayDeque<>();
+        queue.addLast(seed);
+        while(!queue.isEmpty()){
+            Pair<S, Saut> state = queue.removeFirst();
+            for(Pair<S, Saut> next : product.successors(state)){
+                if(!explored.test(next)) continue;
+                List<Pair<S, Saut>> pre = predecessors.get(next);
+                if(pre == null){
+                    if(--budget < 0) return null;
+                    pre = new ArrayList<>();
+                    predecessors.put(next, pre);
+                    queue.addLast(next);
+                }
+                pre.add(state);
+            }
+        }
+
+        Set<Pair<S, Saut>> component = new HashSet<>();
+        component.add(seed);
+        queue.addLast(seed);
+        while(!queue.isEmpty())
+            for(Pair<S, Saut> pre : predecessors.get(queue.removeFirst()))
+                if(component.add(pre))
+                    queue.addLast(pre);
+        return component;
+    }
+
+    // BFS from the initial states to the nearest accepting state of the component
+    private Pair<S, Saut> nearestAccepting(Set<Pair<S, Saut>> component, Map<Pair<S, Saut>, Pair<S, Saut>> parent) {
+        Deque<Pair<S, Saut>> queue = new ArrayDeque<>();
+        for(Pair<S, Saut> init : product.initialStates()){
+            if(parent.containsKey(init) || !explored.test(init)) continue;
+            parent.put(init, null);
+            if(component.contains(init) && product.isAccepting(init)) return init;
+            queue.addLast(init);
+        }
+        while(!queue.isEmpty()){
+            Pair<S, Saut> state = queue.removeFirst();
+            for(Pair<S, Saut> next : product.successors(state)){
+                if(parent.containsKey(next) || !explored.test(next)) continue;
+                if(--budget < 0) return null;
+                parent.put(next, state);
+                if(component.contains(next) && product.isAccepting(next)) return next;
+                queue.addLast(next);
+            }
+        }
+        return null;
+    }
+
+    // BFS inside the component from entry; the last state of a shortest cycle back to entry
+    private Pair<S, Saut> lastBeforeReturn(Pair<S, Saut> entry, Set<Pair<S, Saut>> component, Map<Pair<S, Saut>, Pair<S, Saut>> parent) {
+        Deque<Pair<S, Saut>> queue = new ArrayDeque<>();
+        parent.put(entry, null);
+        queue.addLast(entry);
+        while(!queue.isEmpty()){
+            Pair<S, Saut> state = queue.removeFirst();
+            for(Pair<S, Saut> next : product.successors(state)){
+                if(next.equals(entry)) return state;
+                if(parent.containsKey(next) || !component.contains(next)) continue;
+                if(--budget < 0) return null;
+                parent.put(next, state);
+                queue.addLast(next);
+            }
+        }
+        return null;
+    }
+
+    // the TS states from a BFS root to state, following parent links
+    private List<S> path(Map<Pair<S, Saut>, Pair<S, Saut>> parent, Pair<S, Saut> state) {
+        List<S> res = new ArrayList<>();
+        for(; state != null; state = parent.get(state))
+            res.add(state.getFirst());
+        Collections.reverse(res);
+        return res;
+    }
+}
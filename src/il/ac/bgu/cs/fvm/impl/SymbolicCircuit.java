@@ -0,0 +1,30 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.circuits.Circuit;
+
+import java.util.Map;
+
+/**
+ * A circuit that can describe its logic as BDDs. {@link SymbolicCircuitChecker} uses these
+ * functions directly; for any other {@link Circuit} it has to derive them by evaluating the
+ * circuit on every combination of inputs and registers.
+ * <p>
+ * Intermediate BDDs kept across several {@link BddManager} calls must be protected with
+ * {@link BddManager#ref(int)}, or the manager may collect them.
+ */
+public interface SymbolicCircuit extends Circuit {
+
+    /**
+     * The next value of {@code register}, as a function of the current inputs and registers.
+     *
+     * @param variables the BDD of every input and register name
+     */
+    int nextRegister(String register, BddManager bdd, Map<String, Integer> variables);
+
+    /**
+     * The value of {@code output}, as a function of the current inputs and registers.
+     *
+     * @param variables the BDD of every input and register name
+     */
+    int output(String output, BddManager bdd, Map<String, Integer> variables);
+}
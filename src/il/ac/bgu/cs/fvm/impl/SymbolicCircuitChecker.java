@@ -0,0 +1,277 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.circuits.Circuit;
+import il.ac.bgu.cs.fvm.util.Pair;
+import il.ac.bgu.cs.fvm.verification.VerificationFailed;
+import il.ac.bgu.cs.fvm.verification.VerificationResult;
+import il.ac.bgu.cs.fvm.verification.VerificationSucceeded;
+
+import java.util.*;
+
+/**
+ * Symbolic reachability and invariant checking for circuits, without building a
+ * transition system.
+ * <p>
+ * States are the same as in {@code transitionSystemFromCircuit}: pairs of an input and a
+ * register valuation, initially with all registers off. Sets of states are BDDs over one
+ * variable per input and two per register (current and next value, interleaved). The
+ * transition relation is the conjunction of {@code next(r) <-> f_r(inputs, registers)}
+ * over all registers, and the reachable states are computed by image iteration.
+ * <p>
+ * The register and output functions come from the circuit itself if it is a
+ * {@link SymbolicCircuit}, such as a {@link GateCircuit}. Any other circuit can only be
+ * evaluated, so its functions are derived by calling it on all 2^(inputs+registers)
+ * combinations of values. That costs more than {@code transitionSystemFromCircuit}, which
+ * evaluates only the reachable states, so large circuits must be symbolic.
+ */
+public class SymbolicCircuitChecker {
+
+    private final Circuit circuit;
+    private final BddManager bdd;
+    private final List<String> inputs;
+    private final List<String> registers;
+    private final Map<String, Integer> variables = new HashMap<>();
+    private final Map<String, Integer> outputs = new HashMap<>();
+    private final int[] nextRegisters;
+    private final int transitionRelation;
+    // inputs and current registers, quantified away by the image
+    private final int currentCube;
+    // renames next-register variables to current ones
+    private final int[] nextToCurrent;
+    // frontier of each BFS step: states first reached after exactly i steps
+    private List<Integer> rings;
+    private int reachable = -1;
+
+    /**
+     * @throws IllegalArgumentException if {@code c} is not a {@link SymbolicCircuit} and has
+     *                                  too many inputs and registers to enumerate
+     */
+    public SymbolicCircuitChecker(Circuit c) {
+        this(c, 1 << 16);
+    }
+
+    /**
+     * @param initialNodes the initial size of the BDD node table
+     */
+    SymbolicCircuitChecker(Circuit c, int initialNodes) {
+        if(!(c instanceof SymbolicCircuit) && c.getInputPortNames().size() + c.getRegisterNames().size() >= Integer.SIZE - 1)
+            throw new IllegalArgumentException("Too many circuit inputs and registers to enumerate; implement SymbolicCircuit instead");
+        this.circuit = c;
+        this.inputs = new ArrayList<>(c.getInputPortNames());
+        this.registers = new ArrayList<>(c.getRegisterNames());
+        this.bdd = new BddManager(inputs.size() + 2 * registers.size(), initialNodes);
+
+        int[] current = new int[inputs.size() + registers.size()];
+        for(int i = 0; i < inputs.size(); i++){
+            variables.put(inputs.get(i), bdd.ref(bdd.var(i)));
+            current[i] = i;
+        }
+        nextToCurrent = new int[bdd.varCount()];
+        Arrays.fill(nextToCurrent, -1);
+        for(int r = 0; r < registers.size(); r++){
+            variables.put(registers.get(r), bdd.ref(bdd.var(currentVar(r))));
+            current[inputs.size() + r] = currentVar(r);
+            nextToCurrent[nextVar(r)] = currentVar(r);
+        }
+        currentCube = bdd.ref(bdd.cube(current));
+
+        nextRegisters = new int[registers.size()];
+        if(c instanceof SymbolicCircuit){
+            SymbolicCircuit sc = (SymbolicCircuit) c;
+            for(int r = 0; r < registers.size(); r++)
+                nextRegisters[r] = bdd.ref(sc.nextRegister(registers.get(r), bdd, Collections.unmodifiableMap(variables)));
+            for(String o: c.getOutputPortNames())
+                outputs.put(o, bdd.ref(sc.output(o, bdd, Collections.unmodifiableMap(variables))));
+        }
+        else enumerate();
+
+        int t = bdd.ref(BddManager.TRUE);
+        for(int r = 0; r < registers.size(); r++){
+            int next = bdd.ref(bdd.iff(bdd.var(nextVar(r)), nextRegisters[r]));
+            int conj = bdd.ref(bdd.and(t, next));
+            bdd.deref(next);
+            bdd.deref(t);
+            t = conj;
+        }
+        transitionRelation = t;
+    }
+
+    public BddManager bdd() {
+        return bdd;
+    }
+
+    /**
+     * The BDD of an input or register, as a predicate over states.
+     */
+    public int variable(String name) {
+        Integer res = variables.get(name);
+        if(res == null) throw new IllegalArgumentException("No input or register named " + name);
+        return res;
+    }
+
+    /**
+     * The BDD of an output, as a predicate over states.
+     */
+    public int output(String name) {
+        Integer res = outputs.get(name);
+        if(res == null) throw new IllegalArgumentException("No output named " + name);
+        return res;
+    }
+
+    /**
+     * The reachable states, as a predicate over inputs and current registers.
+     */
+    public int reachable() {
+        if(reachable >= 0) return reachable;
+        rings = new ArrayList<>();
+        int reached = bdd.ref(BddManager.TRUE);
+        for(int r = 0; r < registers.size(); r++){
+            int conj = bdd.ref(bdd.and(reached, bdd.nvar(currentVar(r))));
+            bdd.deref(reached);
+            reached = conj;
+        }
+        int frontier = bdd.ref(reached);
+        while(frontier != BddManager.FALSE){
+            rings.add(frontier);
+            int image = bdd.ref(image(frontier));
+            int fresh = bdd.ref(bdd.and(image, bdd.not(reached)));
+            bdd.deref(image);
+            int union = bdd.ref(bdd.or(reached, fresh));
+            bdd.deref(reached);
+            reached = union;
+            frontier = fresh;
+        }
+        bdd.deref(frontier);
+        reachable = reached;
+        return reachable;
+    }
+
+    /**
+     * The number of reachable (input, register) states.
+     */
+    public double reachableStateCount() {
+        // next-register variables are unconstrained in a set of states
+        return bdd.satCount(reachable()) / Math.pow(2, registers.size());
+    }
+
+    /**
+     * Checks that {@code invariant}, a predicate over inputs, registers and outputs, holds in
+     * every reachable state. A failure carries a shortest path from an initial state to a
+     * violating state as its prefix, and an empty cycle.
+     */
+    public VerificationResult<Pair<Map<String, Boolean>, Map<String, Boolean>>> checkInvariant(int invariant) {
+        bdd.ref(invariant);
+        try {
+            reachable();
+            int violation = bdd.ref(bdd.not(invariant));
+            try {
+                for(int step = 0; step < rings.size(); step++){
+                    int bad = bdd.and(rings.get(step), violation);
+                    if(bad != BddManager.FALSE){
+                        VerificationFailed<Pair<Map<String, Boolean>, Map<String, Boolean>>> res = new VerificationFailed<>();
+                        res.setPrefix(trace(step, bdd.anySat(bad)));
+                        res.setCycle(new ArrayList<>());
+                        return res;
+                    }
+                }
+                return new VerificationSucceeded<>();
+            }
+            finally { bdd.deref(violation); }
+        }
+        finally { bdd.deref(invariant); }
+    }
+
+    /**
+     * The states after one step from {@code states}.
+     */
+    private int image(int states) {
+        int next = bdd.ref(bdd.andExists(states, transitionRelation, currentCube));
+        int res = bdd.replace(next, nextToCurrent);
+        bdd.deref(next);
+        return res;
+    }
+
+    // walks back through the rings from a violating assignment in ring last
+    private List<Pair<Map<String, Boolean>, Map<String, Boolean>>> trace(int last, int[] assignment) {
+        LinkedList<Pair<Map<String, Boolean>, Map<String, Boolean>>> res = new LinkedList<>();
+        res.addFirst(state(assignment));
+        for(int step = last - 1; step >= 0; step--){
+            // predecessors in ring step whose register update yields the registers of assignment
+            int pred = bdd.ref(rings.get(step));
+            for(int r = 0; r < registers.size(); r++){
+                boolean value = assignment[currentVar(r)] == 1;
+                int update = value ? nextRegisters[r] : bdd.not(nextRegisters[r]);
+                int conj = bdd.ref(bdd.and(pred, update));
+                bdd.deref(pred);
+                pred = conj;
+            }
+            assignment = bdd.anySat(pred);
+            bdd.deref(pred);
+            res.addFirst(state(assignment));
+        }
+        return res;
+    }
+
+    private Pair<Map<String, Boolean>, Map<String, Boolean>> state(int[] assignment) {
+        Map<String, Boolean> in = new HashMap<>();
+        for(int i = 0; i < inputs.size(); i++)
+            in.put(inputs.get(i), assignment[i] == 1);
+        Map<String, Boolean> regs = new HashMap<>();
+        for(int r = 0; r < registers.size(); r++)
+            regs.put(registers.get(r), assignment[currentVar(r)] == 1);
+        return new Pair<>(in, regs);
+    }
+
+    private int currentVar(int register) {
+        return inputs.size() + 2 * register;
+    }
+
+    private int nextVar(int register) {
+        return inputs.size() + 2 * register + 1;
+    }
+
+    /**
+     * Derives the register and output functions of an opaque circuit by Shannon expansion
+     * over all its inputs and registers: 2^(inputs+registers) evaluations of the circuit.
+     */
+    private void enumerate() {
+        List<String> outputNames = new ArrayList<>(circuit.getOutputPortNames());
+        int[] functions = expand(0, new boolean[inputs.size() + registers.size()], outputNames);
+        for(int r = 0; r < registers.size(); r++)
+            nextRegisters[r] = functions[r];
+        for(int o = 0; o < outputNames.size(); o++)
+            outputs.put(outputNames.get(o), functions[registers.size() + o]);
+    }
+
+    // all results are referenced; the cofactors are released once combined
+    private int[] expand(int level, boolean[] values, List<String> outputNames) {
+        int n = registers.size() + outputNames.size();
+        int[] res = new int[n];
+        if(level == values.length){
+            Map<String, Boolean> in = new HashMap<>();
+            for(int i = 0; i < inputs.size(); i++)
+                in.put(inputs.get(i), values[i]);
+            Map<String, Boolean> regs = new HashMap<>();
+            for(int r = 0; r < registers.size(); r++)
+                regs.put(registers.get(r), values[inputs.size() + r]);
+            Map<String, Boolean> next = circuit.updateRegisters(in, regs);
+            Map<String, Boolean> out = circuit.computeOutputs(in, regs);
+            for(int r = 0; r < registers.size(); r++)
+                res[r] = Boolean.TRUE.equals(next.get(registers.get(r))) ? BddManager.TRUE : BddManager.FALSE;
+            for(int o = 0; o < outputNames.size(); o++)
+                res[registers.size() + o] = Boolean.TRUE.equals(out.get(outputNames.get(o))) ? BddManager.TRUE : BddManager.FALSE;
+            return res;
+        }
+        int v = level < inputs.size() ? level : currentVar(level - inputs.size());
+        values[level] = false;
+        int[] lo = expand(level + 1, values, outputNames);
+        values[level] = true;
+        int[] hi = expand(level + 1, values, outputNames);
+        for(int k = 0; k < n; k++){
+            res[k] = bdd.ref(bdd.ite(bdd.var(v), hi[k], lo[k]));
+            bdd.deref(lo[k]);
+            bdd.deref(hi[k]);
+        }
+        return res;
+    }
+}
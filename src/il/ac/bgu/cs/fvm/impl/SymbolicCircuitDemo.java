@@ -0,0 +1,153 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.circuits.Circuit;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+import il.ac.bgu.cs.fvm.util.Pair;
+import il.ac.bgu.cs.fvm.verification.VerificationFailed;
+import il.ac.bgu.cs.fvm.verification.VerificationResult;
+
+import java.util.*;
+
+import static il.ac.bgu.cs.fvm.impl.GateCircuit.*;
+
+/**
+ * Cross-checks {@link SymbolicCircuitChecker} against the explicit {@code transitionSystemFromCircuit}
+ * on random gate circuits, both through their gates and as opaque circuits, and with a node
+ * table small enough that the BDDs are collected and regrown all the time. Then checks
+ * circuits with 64 registers that only the symbolic engine can handle.
+ */
+public class SymbolicCircuitDemo {
+
+    public static void main(String[] args) {
+        FvmFacadeImpl fvm = new FvmFacadeImpl();
+        int circuits = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int mismatches = 0;
+        int failures = 0;
+
+        System.out.println("1. Compare reachable states and output invariants on " + circuits + " random circuits.");
+        for(int seed = 0; seed < circuits; seed++){
+            GateCircuit c = randomCircuit(new Random(seed));
+            TransitionSystem<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>, Object> ts = fvm.transitionSystemFromCircuit(c);
+            List<SymbolicCircuitChecker> checkers = Arrays.asList(new SymbolicCircuitChecker(c),
+                    new SymbolicCircuitChecker(opaque(c)), new SymbolicCircuitChecker(c, 16), new SymbolicCircuitChecker(opaque(c), 16));
+            for(SymbolicCircuitChecker checker: checkers){
+                if(checker.reachableStateCount() != ts.getStates().size()){
+                    System.out.println("\tcircuit " + seed + ": " + checker.reachableStateCount() + " symbolic states, " + ts.getStates().size() + " explicit");
+                    mismatches++;
+                }
+                for(String o: c.getOutputPortNames()){
+                    boolean holds = true;
+                    for(Pair<Map<String, Boolean>, Map<String, Boolean>> s: ts.getStates())
+                        holds &= ts.getLabel(s).contains(o);
+                    VerificationResult<Pair<Map<String, Boolean>, Map<String, Boolean>>> res = checker.checkInvariant(checker.output(o));
+                    if(holds == res instanceof VerificationFailed || !holds && !validTrace(c, o, (VerificationFailed<Pair<Map<String, Boolean>, Map<String, Boolean>>>) res)){
+                        System.out.println("\tcircuit " + seed + ", output " + o + ": explicit says " + holds + ", symbolic " + res);
+                        mismatches++;
+                    }
+                    if(!holds) failures++;
+                }
+            }
+        }
+        System.out.println("\t" + mismatches + " mismatches, " + failures + " violated invariants with valid traces.\n");
+
+        System.out.println("2. Check circuits with 64 registers.");
+        long t = System.nanoTime();
+        SymbolicCircuitChecker shift = new SymbolicCircuitChecker(shiftRegister(64));
+        System.out.println("\tshift register: " + shift.reachableStateCount() + " reachable states, "
+                + (System.nanoTime() - t) / 1000000 + "ms");
+        t = System.nanoTime();
+        VerificationResult<?> ring = fvm.verifyCircuitInvariant(tokenRing(64), "atMostOneToken");
+        System.out.println("\ttoken ring never holds two tokens: " + ring.getClass().getSimpleName() + ", " + (System.nanoTime() - t) / 1000000 + "ms");
+    }
+
+    // a failing trace starts from the initial registers, follows the register updates, and ends with the output off
+    private static boolean validTrace(Circuit c, String output, VerificationFailed<Pair<Map<String, Boolean>, Map<String, Boolean>>> res) {
+        List<Pair<Map<String, Boolean>, Map<String, Boolean>>> prefix = res.getPrefix();
+        if(prefix.isEmpty() || prefix.get(0).second.containsValue(true)) return false;
+        for(int i = 0; i + 1 < prefix.size(); i++)
+            if(!c.updateRegisters(prefix.get(i).first, prefix.get(i).second).equals(prefix.get(i + 1).second)) return false;
+        Pair<Map<String, Boolean>, Map<String, Boolean>> last = prefix.get(prefix.size() - 1);
+        return !c.computeOutputs(last.first, last.second).get(output);
+    }
+
+    private static GateCircuit randomCircuit(Random random) {
+        GateCircuit c = new GateCircuit();
+        List<String> signals = new ArrayList<>();
+        int inputs = 1 + random.nextInt(3), registers = 1 + random.nextInt(7);
+        for(int i = 0; i < inputs; i++){
+            c.input("x" + i);
+            signals.add("x" + i);
+        }
+        for(int r = 0; r < registers; r++)
+            signals.add("r" + r);
+        for(int r = 0; r < registers; r++)
+            c.register("r" + r, randomGate(random, signals, 3));
+        for(int o = 0; o < 2; o++)
+            c.output("y" + o, randomGate(random, signals, 3));
+        return c;
+    }
+
+    private static GateCircuit.Gate randomGate(Random random, List<String> signals, int depth) {
+        if(depth == 0 || random.nextInt(4) == 0)
+            return random.nextInt(10) == 0 ? constant(random.nextBoolean()) : signal(signals.get(random.nextInt(signals.size())));
+        switch(random.nextInt(4)){
+            case 0: return not(randomGate(random, signals, depth - 1));
+            case 1: return and(randomGate(random, signals, depth - 1), randomGate(random, signals, depth - 1));
+            case 2: return or(randomGate(random, signals, depth - 1), randomGate(random, signals, depth - 1));
+            default: return xor(randomGate(random, signals, depth - 1), randomGate(random, signals, depth - 1));
+        }
+    }
+
+    // the same circuit, seen only through updateRegisters and computeOutputs
+    private static Circuit opaque(Circuit c) {
+        return new Circuit() {
+            @Override
+            public Set<String> getInputPortNames() {
+                return c.getInputPortNames();
+            }
+
+            @Override
+            public Set<String> getRegisterNames() {
+                return c.getRegisterNames();
+            }
+
+            @Override
+            public Set<String> getOutputPortNames() {
+                return c.getOutputPortNames();
+            }
+
+            @Override
+            public Map<String, Boolean> updateRegisters(Map<String, Boolean> inputs, Map<String, Boolean> registers) {
+                return c.updateRegisters(inputs, registers);
+            }
+
+            @Override
+            public Map<String, Boolean> computeOutputs(Map<String, Boolean> inputs, Map<String, Boolean> registers) {
+                return c.computeOutputs(inputs, registers);
+            }
+        };
+    }
+
+    // r0 takes the input, every other register the one before it: every register value is reachable
+    private static GateCircuit shiftRegister(int n) {
+        GateCircuit c = new GateCircuit().input("x").register("r0", signal("x"));
+        for(int r = 1; r < n; r++)
+            c.register("r" + r, signal("r" + (r - 1)));
+        return c.output("y", signal("r" + (n - 1)));
+    }
+
+    // a token injected while every register is off, and passed on while the input is on
+    private static GateCircuit tokenRing(int n) {
+        GateCircuit c = new GateCircuit().input("move");
+        GateCircuit.Gate move = signal("move");
+        GateCircuit.Gate none = constant(true), one = constant(false);
+        for(int r = 0; r < n; r++){
+            GateCircuit.Gate self = signal("r" + r), previous = signal("r" + ((r + n - 1) % n));
+            c.register("r" + r, or(and(move, previous), and(not(move), self)));
+            one = or(and(one, not(self)), and(none, self));
+            none = and(none, not(self));
+        }
+        c.register("r0", or(or(and(move, signal("r" + (n - 1))), and(not(move), signal("r0"))), none));
+        return c.output("atMostOneToken", or(none, one));
+    }
+}
@@ -1,29 +1,48 @@
 package il.ac.bgu.cs.fvm.impl;
 
 import il.ac.bgu.cs.fvm.exceptions.*;
+import il.ac.bgu.cs.fvm.impl.LabelTable.LabelSet;
 import il.ac.bgu.cs.fvm.transitionsystem.Transition;
-import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
-public class TransitionSystemImpl<STATE,ACTION,ATOMIC_PROPOSITION> implements TransitionSystem<STATE,ACTION,ATOMIC_PROPOSITION> {
+public class TransitionSystemImpl<STATE,ACTION,ATOMIC_PROPOSITION> implements IndexedTransitionSystem<STATE,ACTION,ATOMIC_PROPOSITION> {
 
     String name;
     Set<ACTION> actions;
-    Map<STATE, Boolean> states;
+    Set<STATE> states;
+    Set<STATE> initial_states;
+    Set<STATE> initial_states_view;
     Set<ATOMIC_PROPOSITION> atomic_propositions;
     Set<Transition<STATE,ACTION>> transitions;
-    Map<STATE, Set<ATOMIC_PROPOSITION>> labeling_function;
+    // labels are interned bitsets over the atomic propositions of label_table
+    LabelTable<ATOMIC_PROPOSITION> label_table;
+    Map<STATE, LabelSet<ATOMIC_PROPOSITION>> labeling_function;
+    // adjacency indexes: state -> action -> successors/predecessors
+    Map<STATE, Map<ACTION, Set<STATE>>> post_index;
+    Map<STATE, Map<ACTION, Set<STATE>>> pre_index;
+    // usage counters for the attachment checks: transitions per action, labels per atomic proposition
+    Map<ACTION, Integer> action_usage;
+    Map<ATOMIC_PROPOSITION, Integer> ap_usage;
 
     public TransitionSystemImpl(){
         actions = new HashSet<>();
-        states = new HashMap<>();
+        states = new HashSet<>();
+        initial_states = new HashSet<>();
+        initial_states_view = Collections.unmodifiableSet(initial_states);
         atomic_propositions = new HashSet<>();
         transitions = new HashSet<>();
+        label_table = new LabelTable<>();
         labeling_function = new HashMap<>();
+        post_index = new HashMap<>();
+        pre_index = new HashMap<>();
+        action_usage = new HashMap<>();
+        ap_usage = new HashMap<>();
     }
 
     @Override
@@ -43,28 +62,35 @@ public class TransitionSystemImpl<STATE,ACTION,ATOMIC_PROPOSITION> implements Tr
 
     @Override
     public void setInitial(STATE aState, boolean isInitial) throws StateNotFoundException {
-        if(!states.containsKey(aState))
+        if(!states.contains(aState))
             throw new StateNotFoundException(aState);
-        states.replace(aState, isInitial);
+        if(isInitial)
+            initial_states.add(aState);
+        else
+            initial_states.remove(aState);
     }
 
     @Override
     public void addState(STATE state) {
-        if(states.containsKey(state)) return;
-        states.put(state, false);
-        labeling_function.put(state, new HashSet<>());
+        if(!states.add(state)) return;
+        labeling_function.put(state, label_table.empty());
+        label_table.replace(null, label_table.empty());
     }
 
     @Override
     public void addTransition(Transition<STATE, ACTION> t) throws FVMException {
-        if(!states.containsKey(t.getFrom()))
+        if(!states.contains(t.getFrom()))
             throw new InvalidTransitionException(t);
-        if(!states.containsKey(t.getTo()))
+        if(!states.contains(t.getTo()))
             throw new InvalidTransitionException(t);
         if(!actions.contains(t.getAction()))
             throw new InvalidTransitionException(t);
 
-        transitions.add(t);
+        if(transitions.add(t)) {
+            addToIndex(post_index, t.getFrom(), t.getAction(), t.getTo());
+            addToIndex(pre_index, t.getTo(), t.getAction(), t.getFrom());
+            count(action_usage, t.getAction(), 1);
+        }
     }
 
     @Override
@@ -75,6 +101,7 @@ public class TransitionSystemImpl<STATE,ACTION,ATOMIC_PROPOSITION> implements Tr
     @Override
     public void addAtomicProposition(ATOMIC_PROPOSITION p) {
         atomic_propositions.add(p);
+        label_table.register(p);
     }
 
     @Override
@@ -86,37 +113,61 @@ public class TransitionSystemImpl<STATE,ACTION,ATOMIC_PROPOSITION> implements Tr
     public void addToLabel(STATE s, ATOMIC_PROPOSITION l) throws FVMException {
         if(!atomic_propositions.contains(l))
             throw new InvalidLablingPairException(s,l);
-        try {
-            labeling_function.get(s).add(l);
-        }
-        catch (Exception e){ throw new StateNotFoundException(s);}
+        LabelSet<ATOMIC_PROPOSITION> label = labeling_function.get(s);
+        if(label == null)
+            throw new StateNotFoundException(s);
+        LabelSet<ATOMIC_PROPOSITION> newLabel = label_table.with(label, l);
+        if(newLabel == label) return;
+        relabel(s, label, newLabel);
+        count(ap_usage, l, 1);
+    }
+
+    /**
+     * Adds all of {@code aps} to the label of {@code s} in one step, so the intermediate
+     * labels of one-at-a-time {@link #addToLabel} are never built.
+     */
+    public void addAllToLabel(STATE s, Collection<? extends ATOMIC_PROPOSITION> aps) throws FVMException {
+        for(ATOMIC_PROPOSITION l: aps)
+            if(!atomic_propositions.contains(l))
+                throw new InvalidLablingPairException(s,l);
+        LabelSet<ATOMIC_PROPOSITION> label = labeling_function.get(s);
+        if(label == null)
+            throw new StateNotFoundException(s);
+        LabelSet<ATOMIC_PROPOSITION> newLabel = label_table.withAll(label, aps);
+        if(newLabel == label) return;
+        relabel(s, label, newLabel);
+        for(ATOMIC_PROPOSITION l: newLabel)
+            if(!label.contains(l))
+                count(ap_usage, l, 1);
     }
 
+    /**
+     * The label of {@code s}. Labels are shared between states, so the set is read-only;
+     * use {@link #addToLabel} and {@link #removeLabel} to change it.
+     */
     @Override
     public Set<ATOMIC_PROPOSITION> getLabel(STATE s) {
-        if(!states.containsKey(s))
+        if(!states.contains(s))
             throw new StateNotFoundException(s);
         return labeling_function.get(s);
     }
 
     @Override
     public Set<STATE> getInitialStates() {
-        Set<STATE> initialStates = new HashSet<>();
-        for (STATE state: states.keySet()) {
-            if(states.get(state))
-                initialStates.add(state);
-        }
-        return initialStates;
+        return initial_states_view;
     }
 
+    /**
+     * A read-only view of the labels, which follows later changes to the system.
+     */
     @Override
     public Map<STATE, Set<ATOMIC_PROPOSITION>> getLabelingFunction() {
-        return labeling_function;
+        return Collections.unmodifiableMap(labeling_function);
     }
 
     @Override
     public Set<STATE> getStates() {
-        return states.keySet();
+        return states;
     }
 
     @Override
@@ -126,43 +177,120 @@ public class TransitionSystemImpl<STATE,ACTION,ATOMIC_PROPOSITION> implements Tr
 
     @Override
     public void removeAction(ACTION action) throws FVMException {
-        for(Transition t: transitions){
-            if(t.getAction().equals(action))
-                throw new DeletionOfAttachedActionException(action, TransitionSystemPart.TRANSITIONS);
-        }
+        if(action_usage.containsKey(action))
+            throw new DeletionOfAttachedActionException(action, TransitionSystemPart.TRANSITIONS);
         actions.remove(action);
     }
 
     @Override
     public void removeAtomicProposition(ATOMIC_PROPOSITION p) throws FVMException {
-        for(Set labels: labeling_function.values()){
-            if(labels.contains(p))
-                throw new DeletionOfAttachedAtomicPropositionException(p,TransitionSystemPart.ATOMIC_PROPOSITIONS);
-        }
+        if(ap_usage.containsKey(p))
+            throw new DeletionOfAttachedAtomicPropositionException(p,TransitionSystemPart.ATOMIC_PROPOSITIONS);
+        atomic_propositions.remove(p);
     }
 
     @Override
     public void removeLabel(STATE s, ATOMIC_PROPOSITION l) {
-        labeling_function.get(s).remove(l);
+        LabelSet<ATOMIC_PROPOSITION> label = labeling_function.get(s);
+        if(label == null)
+            throw new StateNotFoundException(s);
+        LabelSet<ATOMIC_PROPOSITION> newLabel = label_table.without(label, l);
+        if(newLabel == label) return;
+        relabel(s, label, newLabel);
+        count(ap_usage, l, -1);
     }
 
     @Override
     public void removeState(STATE state) throws FVMException {
-        for(Transition t: transitions){
-            if(t.getFrom().equals(state) || t.getTo().equals(state))
-                throw new DeletionOfAttachedStateException(state, TransitionSystemPart.TRANSITIONS);
-        }
+        if(post_index.containsKey(state) || pre_index.containsKey(state))
+            throw new DeletionOfAttachedStateException(state, TransitionSystemPart.TRANSITIONS);
         if(!labeling_function.get(state).isEmpty())
             throw new DeletionOfAttachedStateException(state, TransitionSystemPart.LABELING_FUNCTION);
-        if(states.get(state))
+        if(initial_states.contains(state))
             throw new DeletionOfAttachedStateException(state, TransitionSystemPart.INITIAL_STATES);
 
         states.remove(state);
-        labeling_function.remove(state);
+        label_table.replace(labeling_function.remove(state), null);
     }
 
     @Override
     public void removeTransition(Transition<STATE, ACTION> t) {
-        transitions.remove(t);
+        if(transitions.remove(t)) {
+            removeFromIndex(post_index, t.getFrom(), t.getAction(), t.getTo());
+            removeFromIndex(pre_index, t.getTo(), t.getAction(), t.getFrom());
+            count(action_usage, t.getAction(), -1);
+        }
+    }
+
+    @Override
+    public Set<STATE> postStates(STATE s) {
+        return union(post_index.get(s));
+    }
+
+    @Override
+    public Set<STATE> postStates(STATE s, ACTION a) {
+        return lookup(post_index.get(s), a);
+    }
+
+    @Override
+    public Set<STATE> preStates(STATE s) {
+        return union(pre_index.get(s));
+    }
+
+    @Override
+    public Set<STATE> preStates(STATE s, ACTION a) {
+        return lookup(pre_index.get(s), a);
+    }
+
+    @Override
+    public Map<ACTION, Set<STATE>> outgoing(STATE s) {
+        Map<ACTION, Set<STATE>> byAction = post_index.get(s);
+        return byAction == null ? Collections.emptyMap() : Collections.unmodifiableMap(byAction);
+    }
+
+    /**
+     * An immutable, compact snapshot of this transition system.
+     */
+    public FrozenTransitionSystem<STATE, ACTION, ATOMIC_PROPOSITION> freeze() {
+        return FrozenTransitionSystem.of(this);
+    }
+
+    private void relabel(STATE s, LabelSet<ATOMIC_PROPOSITION> from, LabelSet<ATOMIC_PROPOSITION> to) {
+        labeling_function.put(s, to);
+        label_table.replace(from, to);
+    }
+
+    private <K> void count(Map<K, Integer> usage, K key, int delta) {
+        usage.compute(key, (k, c) -> {
+            int n = (c == null ? 0 : c) + delta;
+            return n == 0 ? null : n;
+        });
+    }
+
+    private void addToIndex(Map<STATE, Map<ACTION, Set<STATE>>> index, STATE s, ACTION a, STATE other) {
+        index.computeIfAbsent(s, k -> new HashMap<>()).computeIfAbsent(a, k -> new HashSet<>()).add(other);
+    }
+
+    private void removeFromIndex(Map<STATE, Map<ACTION, Set<STATE>>> index, STATE s, ACTION a, STATE other) {
+        Map<ACTION, Set<STATE>> byAction = index.get(s);
+        if(byAction == null) return;
+        Set<STATE> others = byAction.get(a);
+        if(others == null) return;
+        others.remove(other);
+        if(others.isEmpty()) byAction.remove(a);
+        if(byAction.isEmpty()) index.remove(s);
+    }
+
+    private Set<STATE> union(Map<ACTION, Set<STATE>> byAction) {
+        Set<STATE> res = new HashSet<>();
+        if(byAction != null)
+            for(Set<STATE> others: byAction.values())
+                res.addAll(others);
+        return res;
+    }
+
+    private Set<STATE> lookup(Map<ACTION, Set<STATE>> byAction, ACTION a) {
+        Set<STATE> others = byAction == null ? null : byAction.get(a);
+        return others == null ? new HashSet<>() : new HashSet<>(others);
     }
 }
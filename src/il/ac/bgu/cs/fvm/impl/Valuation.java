@@ -0,0 +1,164 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import java.util.*;
+
+/**
+ * An immutable variable valuation stored as one {@code long} per slot of a shared
+ * {@link VariableLayout}, with a precomputed hash code. Integer values are stored
+ * inline; any other value is kept in a side array. Valuations of the same layout are
+ * compared with array equality. Against any other {@link Map} this is an ordinary
+ * read-only map, with the same {@code equals}/{@code hashCode} as a {@link HashMap}
+ * holding the same entries.
+ */
+final class Valuation extends AbstractMap<String, Object> {
+
+    private static final long ABSENT = Long.MIN_VALUE;
+    private static final long OBJECT = Long.MIN_VALUE + 1;
+
+    private final VariableLayout layout;
+    // no trailing ABSENT slots, so equal valuations have equal arrays
+    private final long[] values;
+    private final Object[] objects;
+    private final int size;
+    private final int hash;
+
+    private Valuation(VariableLayout layout, long[] values, Object[] objects) {
+        int length = values.length;
+        while(length > 0 && values[length - 1] == ABSENT) length--;
+        boolean hasObjects = false;
+        for(int slot = 0; slot < length; slot++)
+            hasObjects |= values[slot] == OBJECT;
+        this.layout = layout;
+        this.values = length == values.length ? values : Arrays.copyOf(values, length);
+        this.objects = hasObjects ? Arrays.copyOf(objects, length) : null;
+        int size = 0, hash = 0;
+        for(int slot = 0; slot < length; slot++){
+            if(this.values[slot] == ABSENT) continue;
+            size++;
+            hash += entryHash(slot);
+        }
+        this.size = size;
+        this.hash = hash;
+    }
+
+    static Valuation of(VariableLayout layout, Map<String, Object> map) {
+        if(map instanceof Valuation && ((Valuation) map).layout == layout)
+            return (Valuation) map;
+        long[] values = new long[0];
+        Object[] objects = null;
+        for(Map.Entry<String, Object> e: map.entrySet()){
+            int slot = layout.slot(e.getKey());
+            if(slot >= values.length){
+                int length = values.length;
+                values = Arrays.copyOf(values, slot + 1);
+                Arrays.fill(values, length, values.length, ABSENT);
+                if(objects != null) objects = Arrays.copyOf(objects, values.length);
+            }
+            if(e.getValue() instanceof Integer)
+                values[slot] = (Integer) e.getValue();
+            else {
+                if(objects == null) objects = new Object[values.length];
+                values[slot] = OBJECT;
+                objects[slot] = e.getValue();
+            }
+        }
+        return new Valuation(layout, values, objects);
+    }
+
+    /**
+     * A copy of this valuation with {@code name} set to {@code value}.
+     */
+    Valuation with(String name, Object value) {
+        int slot = layout.slot(name);
+        long[] newValues = Arrays.copyOf(values, Math.max(values.length, slot + 1));
+        Arrays.fill(newValues, values.length, newValues.length, ABSENT);
+        Object[] newObjects = objects == null ? null : Arrays.copyOf(objects, newValues.length);
+        if(value instanceof Integer){
+            newValues[slot] = (Integer) value;
+            if(newObjects != null) newObjects[slot] = null;
+        }
+        else {
+            if(newObjects == null) newObjects = new Object[newValues.length];
+            newValues[slot] = OBJECT;
+            newObjects[slot] = value;
+        }
+        return new Valuation(layout, newValues, newObjects);
+    }
+
+    private Object value(int slot) {
+        long v = values[slot];
+        return v == OBJECT ? objects[slot] : Integer.valueOf((int) v);
+    }
+
+    private int entryHash(int slot) {
+        return layout.name(slot).hashCode() ^ Objects.hashCode(value(slot));
+    }
+
+    @Override
+    public Object get(Object key) {
+        int slot = layout.slotOf(key);
+        if(slot < 0 || slot >= values.length || values[slot] == ABSENT) return null;
+        return value(slot);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        int slot = layout.slotOf(key);
+        return slot >= 0 && slot < values.length && values[slot] != ABSENT;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new Iterator<Entry<String, Object>>() {
+                    int next = advance(0);
+
+                    private int advance(int slot) {
+                        while(slot < values.length && values[slot] == ABSENT) slot++;
+                        return slot;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < values.length;
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        if(!hasNext()) throw new NoSuchElementException();
+                        Entry<String, Object> e = new SimpleImmutableEntry<>(layout.name(next), value(next));
+                        next = advance(next + 1);
+                        return e;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(o == this) return true;
+        if(o instanceof Valuation && ((Valuation) o).layout == layout){
+            Valuation other = (Valuation) o;
+            return hash == other.hash && Arrays.equals(values, other.values) && Arrays.equals(objects, other.objects);
+        }
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
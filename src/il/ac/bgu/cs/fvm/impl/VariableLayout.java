@@ -0,0 +1,41 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns every variable name a fixed slot. All {@link Valuation}s built during one
+ * exploration share a layout, so a valuation only needs to store its values.
+ * The layout grows when a new variable shows up; slots are never reused.
+ */
+final class VariableLayout {
+
+    private final Map<String, Integer> slots = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[0];
+
+    int slot(String name) {
+        Integer slot = slots.get(name);
+        if(slot != null) return slot;
+        synchronized (this) {
+            slot = slots.get(name);
+            if(slot == null){
+                slot = names.length;
+                String[] grown = Arrays.copyOf(names, slot + 1);
+                grown[slot] = name;
+                names = grown;
+                slots.put(name, slot);
+            }
+            return slot;
+        }
+    }
+
+    int slotOf(Object name) {
+        Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    String name(int slot) {
+        return names[slot];
+    }
+}